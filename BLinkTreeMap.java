@@ -0,0 +1,602 @@
+package AppSlash.Code;
+/************************************************************************************
+ * @file BLinkTreeMap.java
+ */
+
+import java.lang.reflect.Array;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * The BLinkTreeMap class provides concurrent B+Tree maps following Lehman and Yao's
+ * B-link tree.  As in BpTreeMap, all keys are at the leaf level and each divider key
+ * is the largest key in its left subtree.  In addition, every node has a high key
+ * (the largest key it may hold, null for the rightmost node of a level) and a link to
+ * its right sibling, so a search that reaches a node after it has split simply moves
+ * right.
+ * The contents of a node are immutable and replaced as a whole by writers, so lookups
+ * and scans take no locks and never block.  An insert latches only the leaf it
+ * changes, and after a split the parent it posts the new divider to, one node at a
+ * time (plus the right sibling while moving right).
+ * Keys and values may not be null, and remove is not supported.
+ */
+public class BLinkTreeMap <K extends Comparable <K>, V>
+        extends AbstractMap <K, V>
+        implements SortedMap <K, V>
+{
+    /** The default maximum fanout (number of children) for a node.
+     */
+    private static final int ORDER = 64;
+
+    /** The maximum number of keys in a node.
+     */
+    private final int max;
+
+    /********************************************************************************
+     * This inner class holds the contents of a node: its keys, its references
+     * (values for a leaf, one more child for an internal node), its high key and its
+     * right sibling.  Contents are never modified once published.
+     */
+    private final class Contents
+    {
+        final K []      key;                                          // array of keys
+        final Object [] ref;                                          // array of references/values
+        final K         high;                                         // largest key allowed (null: none)
+        final Node      right;                                        // right sibling (null: none)
+
+        Contents (K [] _key, Object [] _ref, K _high, Node _right)
+        {
+            key   = _key;
+            ref   = _ref;
+            high  = _high;
+            right = _right;
+        } // constructor
+
+        /****************************************************************************
+         * Return whether key k belongs to a node to the right of this one.
+         * @param k  the key
+         */
+        boolean beyond (K k)
+        {
+            return high != null && k.compareTo (high) > 0;
+        } // beyond
+
+    } // Contents inner class
+
+    /********************************************************************************
+     * This inner class defines nodes that are stored in the B-link tree map.
+     */
+    private final class Node
+    {
+        final int           level;                                    // 0 for a leaf
+        final ReentrantLock latch = new ReentrantLock ();            // held by writers only
+        volatile Contents   c;                                        // the current contents
+
+        Node (int _level, Contents _c)
+        {
+            level = _level;
+            c     = _c;
+        } // constructor
+
+    } // Node inner class
+
+    /** The class for type K.
+     */
+    private final Class <K> classK;
+
+    /** The root of the tree (changed only under rootLatch).
+     */
+    private volatile Node root;
+
+    /** The latch for growing the tree by a new root.
+     */
+    private final ReentrantLock rootLatch = new ReentrantLock ();
+
+    /** The first (leftmost) leaf, which stays first since splits move keys right.
+     */
+    private final Node firstLeaf;
+
+    /** The number of keys in the map.
+     */
+    private final AtomicInteger keyCount = new AtomicInteger ();
+
+    /********************************************************************************
+     * Construct an empty B-link tree map of the default order.
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     */
+    public BLinkTreeMap (Class <K> _classK, Class <V> _classV)
+    {
+        this (_classK, _classV, ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty B-link tree map whose nodes have the given order.
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     * @param _order   the maximum number of children of a node (at least 3)
+     */
+    @SuppressWarnings("unchecked")
+    public BLinkTreeMap (Class <K> _classK, Class <V> _classV, int _order)
+    {
+        if (_order < 3) throw new IllegalArgumentException ("B-link tree order must be at least 3: " + _order);
+        classK    = _classK;
+        max       = _order - 1;
+        firstLeaf = new Node (0, new Contents ((K []) Array.newInstance (classK, 0), new Object [0], null, null));
+        root      = firstLeaf;
+    } // constructor
+
+    /********************************************************************************
+     * Return null to use the natural order based on the key type.
+     */
+    public Comparator <? super K> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /********************************************************************************
+     * Return the number of keys in the map.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        return keyCount.get ();
+    } // size
+
+    /********************************************************************************
+     * Given the key, look up the value without taking any locks: descend from the
+     * root, moving right whenever the key is beyond a node's high key.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        var k = (K) key;
+        var n = root;
+        while (true) {
+            var c = n.c;                                              // one consistent snapshot
+            if (c.beyond (k)) { n = c.right; continue; }
+            var i = find (c.key, k);
+            if (n.level == 0) return (i < c.key.length && k.compareTo (c.key[i]) == 0) ? (V) c.ref[i] : null;
+            n = (Node) c.ref[i];
+        } // while
+    } // get
+
+    /********************************************************************************
+     * Return whether the map contains the key (by lookup rather than by scanning).
+     * @param key  the key to look for
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the map, replacing the value of an existing key.  Only
+     * the leaf is latched; a full leaf is split into itself and a new right sibling
+     * (published before the leaf's new contents link to it), and the divider is then
+     * posted to the parent, which may split in turn.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the previous value for this key or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        if (key == null || value == null) throw new NullPointerException ("BLinkTreeMap: null key or value");
+
+        var stack = new ArrayDeque <Node> ();                         // internal nodes on the way down
+        var n     = root;
+        while (n.level > 0) {
+            var c = n.c;
+            if (c.beyond (key)) { n = c.right; continue; }
+            stack.push (n);
+            n = (Node) c.ref[find (c.key, key)];
+        } // while
+
+        n.latch.lock ();
+        n = moveRight (n, key);
+        var c = n.c;
+        var i = find (c.key, key);
+        if (i < c.key.length && key.compareTo (c.key[i]) == 0) {     // existing key: replace its value
+            var ref = c.ref.clone ();
+            var old = (V) ref[i];
+            ref[i]  = value;
+            n.c     = new Contents (c.key, ref, c.high, c.right);
+            n.latch.unlock ();
+            return old;
+        } // if
+        keyCount.incrementAndGet ();
+
+        var key2 = insertAt (c.key, i, key);
+        var ref2 = insertAt (c.ref, i, value);
+        while (key2.length > max) {                                   // split n and post the divider up
+            var h    = (n.level == 0) ? (key2.length + 1) / 2 : key2.length / 2;
+            var sep  = key2[(n.level == 0) ? h - 1 : h];              // divider - largest left
+            var from = (n.level == 0) ? h : h + 1;
+            var r    = new Node (n.level, new Contents (Arrays.copyOfRange (key2, from, key2.length),
+                                 Arrays.copyOfRange (ref2, from, ref2.length), c.high, c.right));
+            n.c = new Contents (Arrays.copyOf (key2, h), Arrays.copyOf (ref2, (n.level == 0) ? h : h + 1), sep, r);
+
+            var p = stack.poll ();
+            if (p == null) {                                          // n was the root on the way down
+                rootLatch.lock ();
+                try {
+                    if (root == n) {                                  // still is: grow a new root
+                        var rk = (K []) Array.newInstance (classK, 1);
+                        rk[0]  = sep;
+                        root   = new Node (n.level + 1, new Contents (rk, new Object [] { n, r }, null, null));
+                        n.latch.unlock ();
+                        return null;
+                    } // if
+                } finally {
+                    rootLatch.unlock ();
+                } // try
+                p = findLevel (n.level + 1, sep);                     // the tree has grown since
+            } // if
+            n.latch.unlock ();
+
+            p.latch.lock ();
+            n = moveRight (p, sep);
+            c = n.c;
+            i = find (c.key, sep);
+            key2 = insertAt (c.key, i, sep);
+            ref2 = insertAt (c.ref, i + 1, r);
+        } // while
+        n.c = new Contents (key2, ref2, c.high, c.right);
+        n.latch.unlock ();
+        return null;
+    } // put
+
+    /********************************************************************************
+     * The B-link tree does not support deletion.
+     */
+    public V remove (Object key)
+    {
+        throw new UnsupportedOperationException ("BLinkTreeMap does not support remove");
+    } // remove
+
+    /********************************************************************************
+     * Move right from latched node n until reaching the node whose range includes the
+     * key, latching each right sibling before releasing the node to its left.
+     * @param n  the latched node to start from
+     * @param k  the key
+     * @return  the latched node whose range includes k
+     */
+    private Node moveRight (Node n, K k)
+    {
+        for (var c = n.c; c.beyond (k); c = n.c) {
+            var r = c.right;
+            r.latch.lock ();
+            n.latch.unlock ();
+            n = r;
+        } // for
+        return n;
+    } // moveRight
+
+    /********************************************************************************
+     * Return the (unlatched) node at the given level whose range includes the key,
+     * for posting a divider after the tree has grown above the level it was entered at.
+     * @param level  the level of the node
+     * @param k      the key
+     * @return  the node at the level
+     */
+    @SuppressWarnings("unchecked")
+    private Node findLevel (int level, K k)
+    {
+        var n = root;
+        while (true) {
+            var c = n.c;
+            if (c.beyond (k))      { n = c.right; continue; }
+            if (n.level == level)  return n;
+            n = (Node) c.ref[find (c.key, k)];
+        } // while
+    } // findLevel
+
+    /********************************************************************************
+     * Find the "<=" match position among the keys using binary search.
+     * @param key  the sorted keys
+     * @param k    the key to be matched
+     * @return  the position of the first key at least k (key.length for none)
+     */
+    private static <K extends Comparable <K>> int find (K [] key, K k)
+    {
+        int lo = 0, hi = key.length;
+        while (lo < hi) {
+            var m = (lo + hi) >>> 1;
+            if (k.compareTo (key[m]) <= 0) hi = m; else lo = m + 1;
+        } // while
+        return lo;
+    } // find
+
+    /********************************************************************************
+     * Return a copy of the array with x inserted at position i.
+     * @param a  the array
+     * @param i  the insertion position
+     * @param x  the element to insert
+     */
+    private static <T> T [] insertAt (T [] a, int i, T x)
+    {
+        var b = Arrays.copyOf (a, a.length + 1);
+        System.arraycopy (a, i, b, i + 1, a.length - i);
+        b[i] = x;
+        return b;
+    } // insertAt
+
+    /********************************************************************************
+     * Return the first (smallest) key in the map.
+     * @return  the first key
+     */
+    public K firstKey ()
+    {
+        return new SubMap (null, null).firstKey ();
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key in the map, found by descending along the
+     * rightmost node of each level.
+     * @return  the last key
+     */
+    @SuppressWarnings("unchecked")
+    public K lastKey ()
+    {
+        var n = root;
+        while (true) {
+            var c = n.c;
+            if (c.right != null) { n = c.right; continue; }
+            if (n.level == 0) {
+                if (c.key.length == 0) throw new NoSuchElementException ();
+                return c.key[c.key.length - 1];
+            } // if
+            n = (Node) c.ref[c.key.length];
+        } // while
+    } // lastKey
+
+    /********************************************************************************
+     * Return a set view of the entries in key order.  Iteration is weakly consistent:
+     * it never blocks and never fails, but may miss concurrent inserts.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new SubMap (null, null).entrySet ();
+    } // entrySet
+
+    /********************************************************************************
+     * Return a view of the portion of the map where key < toKey.
+     * @param toKey  the upper bound (exclusive)
+     */
+    public SortedMap <K, V> headMap (K toKey)
+    {
+        return new SubMap (null, toKey);
+    } // headMap
+
+    /********************************************************************************
+     * Return a view of the portion of the map where fromKey <= key.
+     * @param fromKey  the lower bound (inclusive)
+     */
+    public SortedMap <K, V> tailMap (K fromKey)
+    {
+        return new SubMap (fromKey, null);
+    } // tailMap
+
+    /********************************************************************************
+     * Return a view of the portion of the map where fromKey <= key < toKey, backed by
+     * the leaf level.
+     * @param fromKey  the lower bound (inclusive)
+     * @param toKey    the upper bound (exclusive)
+     */
+    public SortedMap <K, V> subMap (K fromKey, K toKey)
+    {
+        return new SubMap (fromKey, toKey);
+    } // subMap
+
+    /********************************************************************************
+     * This inner class provides views of the key range [lo, hi) of the map, where a
+     * null bound is unbounded.  Reads and puts go through to the map.
+     */
+    private class SubMap
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        final K lo, hi;
+
+        SubMap (K _lo, K _hi)
+        {
+            if (_lo != null && _hi != null && _lo.compareTo (_hi) > 0) {
+                throw new IllegalArgumentException ("fromKey > toKey");
+            } // if
+            lo = _lo;
+            hi = _hi;
+        } // constructor
+
+        boolean inRange (K k)
+        {
+            return (lo == null || k.compareTo (lo) >= 0) && (hi == null || k.compareTo (hi) < 0);
+        } // inRange
+
+        public Comparator <? super K> comparator ()  { return null; }
+
+        @SuppressWarnings("unchecked")
+        public V get (Object key)
+        {
+            return inRange ((K) key) ? BLinkTreeMap.this.get (key) : null;
+        } // get
+
+        public boolean containsKey (Object key)
+        {
+            return get (key) != null;
+        } // containsKey
+
+        public V put (K key, V value)
+        {
+            if (! inRange (key)) throw new IllegalArgumentException ("key out of range: " + key);
+            return BLinkTreeMap.this.put (key, value);
+        } // put
+
+        public SortedMap <K, V> subMap (K fromKey, K toKey)
+        {
+            return new SubMap (bound (lo, fromKey, true), bound (hi, toKey, false));
+        } // subMap
+
+        public SortedMap <K, V> headMap (K toKey)  { return new SubMap (lo, bound (hi, toKey, false)); }
+        public SortedMap <K, V> tailMap (K fromKey) { return new SubMap (bound (lo, fromKey, true), hi); }
+
+        public K firstKey ()
+        {
+            var it = new LeafIterator (lo, hi);
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K last = null;
+            for (var it = new LeafIterator (lo, hi); it.hasNext (); ) last = it.next ().getKey ();
+            if (last == null) throw new NoSuchElementException ();
+            return last;
+        } // lastKey
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public Iterator <Map.Entry <K, V>> iterator () { return new LeafIterator (lo, hi); }
+                public int size ()
+                {
+                    if (lo == null && hi == null) return keyCount.get ();
+                    var n = 0;
+                    for (var it = iterator (); it.hasNext (); it.next ()) n++;
+                    return n;
+                } // size
+                public boolean isEmpty () { return ! iterator ().hasNext (); }
+            };
+        } // entrySet
+
+    } // SubMap inner class
+
+    /********************************************************************************
+     * Return the tighter of two lower (or upper) bounds, where null is unbounded.
+     */
+    private K bound (K a, K b, boolean lower)
+    {
+        if (a == null) return b;
+        if (b == null) return a;
+        var c = a.compareTo (b);
+        return (lower ? c >= 0 : c <= 0) ? a : b;
+    } // bound
+
+    /********************************************************************************
+     * This inner class iterates over the entries with keys in [lo, hi) in key order by
+     * descending to the first leaf in range and then following the right links.  Each
+     * leaf is read from one snapshot of its contents, and keys not beyond the last one
+     * returned are skipped, so concurrent splits cause neither repeats nor failures.
+     */
+    private class LeafIterator
+            implements Iterator <Map.Entry <K, V>>
+    {
+        Contents c;                                                   // the current leaf's contents
+        int      i;                                                   // the position in the current leaf
+        K        last;                                                // the last key returned
+        final K  hi;                                                  // the upper bound (exclusive)
+
+        @SuppressWarnings("unchecked")
+        LeafIterator (K lo, K _hi)
+        {
+            hi = _hi;
+            if (lo == null) {
+                c = firstLeaf.c;
+            } else {
+                var n = root;
+                while (true) {
+                    c = n.c;
+                    if (c.beyond (lo))  { n = c.right; continue; }
+                    if (n.level == 0)   break;
+                    n = (Node) c.ref[find (c.key, lo)];
+                } // while
+                i = find (c.key, lo);                                 // first key >= lo
+            } // if
+        } // constructor
+
+        public boolean hasNext ()
+        {
+            while (true) {
+                if (i >= c.key.length) {                              // move on to the next leaf
+                    if (c.right == null) return false;
+                    c = c.right.c;
+                    i = 0;
+                } else if (last != null && c.key[i].compareTo (last) <= 0) {
+                    i++;                                              // moved right by a split: seen already
+                } else {
+                    return hi == null || c.key[i].compareTo (hi) < 0;
+                } // if
+            } // while
+        } // hasNext
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry <K, V> next ()
+        {
+            if (! hasNext ()) throw new NoSuchElementException ();
+            last = c.key[i];
+            return new AbstractMap.SimpleImmutableEntry <> (last, (V) c.ref[i++]);
+        } // next
+
+    } // LeafIterator inner class
+
+    /********************************************************************************
+     * The main method used for testing: several writer threads insert disjoint sets of
+     * keys while reader threads look them up, then every key is checked.
+     * @param args  the command-line arguments (args[0] gives number of keys per writer)
+     */
+    public static void main (String [] args)
+            throws InterruptedException
+    {
+        var perWriter = (args.length > 0) ? Integer.valueOf (args[0]) : 100_000;
+        var writers   = 4;
+        var readers   = 4;
+        var bpt       = new BLinkTreeMap <Integer, Integer> (Integer.class, Integer.class, 16);
+        var found     = new AtomicInteger ();
+        var threads   = new ArrayList <Thread> ();
+
+        for (var w = 0; w < writers; w++) {
+            var id = w;
+            threads.add (new Thread (() -> {
+                var rng = new Random (id);
+                for (var j = 0; j < perWriter; j++) {
+                    var k = rng.nextInt (perWriter) * writers + id;
+                    bpt.put (k, k);
+                } // for
+            }));
+        } // for
+        for (var r = 0; r < readers; r++) {
+            threads.add (new Thread (() -> {
+                var rng = new Random ();
+                for (var j = 0; j < perWriter; j++) {
+                    var k = rng.nextInt (perWriter * writers);
+                    var v = bpt.get (k);
+                    if (v != null && ! v.equals (k)) throw new IllegalStateException ("wrong value for " + k);
+                    if (v != null) found.incrementAndGet ();
+                } // for
+            }));
+        } // for
+        var t0 = System.nanoTime ();
+        for (var t : threads) t.start ();
+        for (var t : threads) t.join ();
+        var t1 = System.nanoTime ();
+
+        var prev = -1;
+        var n    = 0;
+        for (var e : bpt.entrySet ()) {
+            if (e.getKey () <= prev || bpt.get (e.getKey ()) == null) throw new IllegalStateException ("bad key " + e);
+            prev = e.getKey ();
+            n++;
+        } // for
+        out.println ("keys = " + bpt.size () + ", scanned = " + n + ", found by readers = " + found.get () +
+                     ", time = " + (t1 - t0) / 1E6 + " ms");
+        if (n != bpt.size ()) throw new IllegalStateException ("size mismatch");
+    } // main
+
+} // BLinkTreeMap class
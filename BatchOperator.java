@@ -0,0 +1,598 @@
+package AppSlash.Code;
+/****************************************************************************************
+ * @file  BatchOperator.java
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * This class provides vectorized relational algebra operators.  Rather than passing one
+ * tuple at a time (see Operator), these operators pass batches of up to Batch.SIZE rows
+ * stored column by column in primitive vectors (int [], long [], double []) or object
+ * vectors, together with a selection vector of the rows still qualifying.  Predicates
+ * compare a whole column vector against a constant in a tight loop, avoiding the boxing
+ * and per-row lambda dispatch of Table.select (Predicate).
+ *
+ * #usage movie.batchScan ().filter ("year", "<", 1980).project ("title year").materialize ("old")
+ */
+public abstract class BatchOperator
+{
+    /** Array of attribute names of the rows produced.
+     */
+    protected final String [] attribute;
+
+    /** Array of attribute domains of the rows produced.
+     */
+    protected final Class [] domain;
+
+    /** Key of the rows produced.
+     */
+    protected final String [] key;
+
+    /** Map type for the index of a materialized result (that of the scanned table).
+     */
+    protected final Table.MapType mapType;
+
+    /************************************************************************************
+     * Construct a batch operator producing rows with the given schema.
+     *
+     * @param _attribute  the attribute names
+     * @param _domain     the attribute domains
+     * @param _key        the key attributes
+     * @param _mapType    the map type for the index of a materialized result
+     */
+    protected BatchOperator (String [] _attribute, Class [] _domain, String [] _key,
+                             Table.MapType _mapType)
+    {
+        attribute = _attribute;
+        domain    = _domain;
+        key       = _key;
+        mapType   = _mapType;
+    } // constructor
+
+    /************************************************************************************
+     * Prepare the operator (and its inputs) to produce batches from the beginning.
+     */
+    public abstract void open ();
+
+    /************************************************************************************
+     * Produce the next batch.
+     *
+     * @return  the next batch, or null when there are no more batches
+     */
+    public abstract Batch nextBatch ();
+
+    /************************************************************************************
+     * Release the resources held by the operator (and its inputs).
+     */
+    public abstract void close ();
+
+    /************************************************************************************
+     * Filter the rows produced by this operator by comparing an attribute to a constant.
+     *
+     * #usage movie.batchScan ().filter ("year", "<", 1980)
+     *
+     * A numeric attribute may be compared with a constant of any numeric type: integral
+     * columns are compared in double with a constant that is not an integral value fitting
+     * the column (e.g., year < 1979.5), rather than truncating the constant.
+     *
+     * @param attr   the attribute to compare
+     * @param op     the comparison operator: ==, !=, <, <=, > or >=
+     * @param value  the constant to compare with (of the attribute's domain)
+     * @return  the filter operator
+     */
+    public BatchOperator filter (String attr, String op, Comparable value)
+    {
+        var j = col (attr);
+        checkConstant (attr, domain [j], value);
+        return new Filter (this, j, Cmp.parse (op), value);
+    } // filter
+
+    /************************************************************************************
+     * Check that a constant can be compared with an attribute of the given domain: any
+     * Number for a numeric domain, otherwise a value of the domain itself.
+     *
+     * @param attr   the attribute compared
+     * @param dom    the domain of the attribute
+     * @param value  the constant
+     */
+    private static void checkConstant (String attr, Class dom, Comparable value)
+    {
+        var numeric = Number.class.isAssignableFrom (dom);
+        if (value != null && (numeric ? value instanceof Number : dom.isInstance (value))) return;
+        throw new IllegalArgumentException ("cannot compare " + attr + " (" + dom.getSimpleName () + ") with "
+                    + value + ((value == null) ? "" : " (" + value.getClass ().getSimpleName () + ")"));
+    } // checkConstant
+
+    /************************************************************************************
+     * Project the rows produced by this operator onto the given attributes.  Duplicates
+     * are not eliminated.
+     *
+     * @param attributes  the attributes to project onto
+     * @return  the project operator
+     */
+    public BatchOperator project (String attributes)
+    {
+        return new Project (this, attributes.split (" "));
+    } // project
+
+    /************************************************************************************
+     * Run the pipeline and collect the selected rows into a new table, indexed with the
+     * map type of the scanned table.
+     *
+     * @param name  the name of the result table
+     * @return  a table containing all the rows produced
+     */
+    public Table materialize (String name)
+    {
+        var rows = new ArrayList <Comparable []> ();
+        open ();
+        for (var b = nextBatch (); b != null; b = nextBatch ()) b.toTuples (rows);
+        close ();
+        return Table.fromRows (name, attribute, domain, key, rows, mapType);
+    } // materialize
+
+    /************************************************************************************
+     * Return the column position for the given attribute name.
+     *
+     * @param attr  the given attribute name
+     * @return  a column position
+     */
+    public int col (String attr)
+    {
+        for (var i = 0; i < attribute.length; i++) {
+            if (attr.equals (attribute [i])) return i;
+        } // for
+        throw new IllegalArgumentException ("unknown attribute " + attr);
+    } // col
+
+    //-----------------------------------------------------------------------------------
+    // Batches
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * The Batch class holds up to SIZE rows column by column.  Integer, Short and Byte
+     * columns are stored in int [], Long columns in long [], Double and Float columns in
+     * double [], String columns in String [] and any other domain in Comparable [].  String
+     * columns scanned from a ColumnList instead keep their int [] dictionary codes, with
+     * the Dictionary in dict.  The selection vector sel lists the positions of the rows
+     * still qualifying (in order); when it is null every one of the n rows qualifies.
+     */
+    public static class Batch
+    {
+        /** The maximum number of rows in a batch.
+         */
+        public static final int SIZE = 1024;
+
+        final Class [] domain;
+        final Object [] vec;
+        final Dictionary [] dict;
+        int n;
+        int [] sel;
+        int nSel;
+
+        Batch (Class [] _domain, Object [] _vec, Dictionary [] _dict, int _n)
+        {
+            domain = _domain;
+            vec    = _vec;
+            dict   = _dict;
+            n      = _n;
+            nSel   = _n;
+        } // constructor
+
+        /********************************************************************************
+         * Allocate an empty column vector for the given domain.
+         */
+        static Object alloc (Class dom, int size)
+        {
+            if (dom == Integer.class || dom == Short.class || dom == Byte.class) return new int [size];
+            if (dom == Long.class)                                             return new long [size];
+            if (dom == Double.class || dom == Float.class)                     return new double [size];
+            if (dom == String.class)                                           return new String [size];
+            return new Comparable [size];
+        } // alloc
+
+        /********************************************************************************
+         * Store value v in row r of column vector c.
+         */
+        static void set (Object c, int r, Comparable v)
+        {
+            if      (c instanceof int [])    ((int []) c) [r]    = ((Number) v).intValue ();
+            else if (c instanceof long [])   ((long []) c) [r]   = ((Number) v).longValue ();
+            else if (c instanceof double []) ((double []) c) [r] = ((Number) v).doubleValue ();
+            else                             ((Object []) c) [r] = v;
+        } // set
+
+        /********************************************************************************
+         * Return the value in row r of column j as an object of the column's domain.
+         */
+        Comparable get (int j, int r)
+        {
+            var c   = vec [j];
+            var dom = domain [j];
+            if (c instanceof int []) {
+                var v = ((int []) c) [r];
+                if (dict [j] != null)   return dict [j].decode (v);
+                if (dom == Short.class) return (short) v;
+                if (dom == Byte.class)  return (byte) v;
+                return v;
+            } // if
+            if (c instanceof long [])   return ((long []) c) [r];
+            if (c instanceof double []) {
+                var v = ((double []) c) [r];
+                return (dom == Float.class) ? (Comparable) (float) v : (Comparable) v;
+            } // if
+            return (Comparable) ((Object []) c) [r];
+        } // get
+
+        /********************************************************************************
+         * Convert the selected rows to tuples, appending them to rows.
+         */
+        void toTuples (List <Comparable []> rows)
+        {
+            for (var i = 0; i < nSel; i++) {
+                var r = (sel == null) ? i : sel [i];
+                var t = new Comparable [vec.length];
+                for (var j = 0; j < vec.length; j++) t [j] = get (j, r);
+                rows.add (t);
+            } // for
+        } // toTuples
+
+    } // Batch class
+
+    /************************************************************************************
+     * The comparison operators supported by Filter.
+     */
+    enum Cmp
+    {
+        EQ, NE, LT, LE, GT, GE;
+
+        static Cmp parse (String op)
+        {
+            switch (op) {
+            case "==": case "=": return EQ;
+            case "!=":           return NE;
+            case "<":            return LT;
+            case "<=":           return LE;
+            case ">":            return GT;
+            case ">=":           return GE;
+            default: throw new IllegalArgumentException ("unknown comparison " + op);
+            } // switch
+        } // parse
+
+        boolean test (int cmp)
+        {
+            switch (this) {
+            case EQ: return cmp == 0;
+            case NE: return cmp != 0;
+            case LT: return cmp < 0;
+            case LE: return cmp <= 0;
+            case GT: return cmp > 0;
+            default: return cmp >= 0;
+            } // switch
+        } // test
+
+    } // Cmp enum
+
+    //-----------------------------------------------------------------------------------
+    // Operators
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * The Scan operator cuts a list of tuples into batches of column vectors.
+     */
+    static class Scan
+            extends BatchOperator
+    {
+        private final List <Comparable []> tuples;
+        private int pos;
+
+        Scan (String [] _attribute, Class [] _domain, String [] _key, Table.MapType _mapType,
+              List <Comparable []> _tuples)
+        {
+            super (_attribute, _domain, _key, _mapType);
+            tuples = _tuples;
+        } // constructor
+
+        public void open () { pos = 0; }
+
+        public Batch nextBatch ()
+        {
+            var n = Math.min (Batch.SIZE, tuples.size () - pos);
+            if (n <= 0) return null;
+            var vec  = new Object [domain.length];
+            var dict = new Dictionary [domain.length];
+            if (tuples instanceof ColumnList) {
+                var cl = (ColumnList) tuples;
+                for (var j = 0; j < vec.length; j++) {
+                    vec [j]  = slice (cl, j, pos, n);
+                    dict [j] = cl.dictionary (j);
+                } // for
+            } else {
+                for (var j = 0; j < vec.length; j++) vec [j] = Batch.alloc (domain [j], n);
+                for (var r = 0; r < n; r++) {
+                    var t = tuples.get (pos + r);
+                    for (var j = 0; j < vec.length; j++) Batch.set (vec [j], r, t [j]);
+                } // for
+            } // if
+            pos += n;
+            return new Batch (domain, vec, dict, n);
+        } // nextBatch
+
+        /********************************************************************************
+         * Copy rows [from, from + n) of column j of a column list into a column vector
+         * (dictionary-coded strings stay coded).
+         */
+        private Object slice (ColumnList cl, int j, int from, int n)
+        {
+            var c = cl.column (j);
+            if (domain [j] == Character.class) {
+                var v = new Comparable [n];
+                for (var r = 0; r < n; r++) v [r] = (char) ((int []) c) [from + r];
+                return v;
+            } // if
+            if (c instanceof int [])    return Arrays.copyOfRange ((int []) c, from, from + n);
+            if (c instanceof long [])   return Arrays.copyOfRange ((long []) c, from, from + n);
+            if (c instanceof double []) return Arrays.copyOfRange ((double []) c, from, from + n);
+            return Arrays.copyOfRange ((Comparable []) c, from, from + n);
+        } // slice
+
+        public void close () { }
+
+    } // Scan class
+
+    /************************************************************************************
+     * The Filter operator narrows the selection vector of each batch to the rows whose
+     * value in one column compares to a constant as required.  Batches left with no
+     * selected rows are skipped.
+     */
+    static class Filter
+            extends BatchOperator
+    {
+        private final BatchOperator input;
+        private final int j;
+        private final Cmp op;
+        private final Comparable value;
+
+        Filter (BatchOperator _input, int _j, Cmp _op, Comparable _value)
+        {
+            super (_input.attribute, _input.domain, _input.key, _input.mapType);
+            input = _input;
+            j     = _j;
+            op    = _op;
+            value = _value;
+        } // constructor
+
+        public void open () { input.open (); }
+
+        public Batch nextBatch ()
+        {
+            for (var b = input.nextBatch (); b != null; b = input.nextBatch ()) {
+                var out = new int [b.nSel];
+                var c   = b.vec [j];
+                var d   = b.dict [j];
+                int k;
+                if (d != null) k = filter ((int []) c, d, b.sel, b.nSel, out);
+                else if (c instanceof int [] ci) {
+                    k = fitsInt () ? filter (ci, b.sel, b.nSel, ((Number) value).intValue (), out)
+                                   : filter (ci, b.sel, b.nSel, ((Number) value).doubleValue (), out);
+                } else if (c instanceof long [] cl) {
+                    k = LongKeyIndex.isIntegral (value) ? filter (cl, b.sel, b.nSel, ((Number) value).longValue (), out)
+                                                        : filter (cl, b.sel, b.nSel, ((Number) value).doubleValue (), out);
+                } else if (c instanceof double []) k = filter ((double []) c, b.sel, b.nSel, ((Number) value).doubleValue (), out);
+                else                             k = filter ((Object []) c, b.sel, b.nSel, out);
+                if (k == 0) continue;
+                b.sel  = out;
+                b.nSel = k;
+                return b;
+            } // for
+            return null;
+        } // nextBatch
+
+        public void close () { input.close (); }
+
+        /********************************************************************************
+         * Return whether the constant is an integral value in the range of int, so that
+         * int columns can be compared with it as an int.
+         */
+        private boolean fitsInt ()
+        {
+            if (! LongKeyIndex.isIntegral (value)) return false;
+            var v = ((Number) value).longValue ();
+            return v == (int) v;
+        } // fitsInt
+
+        /********************************************************************************
+         * Filter an int column against a constant that is not an int (compared in double,
+         * which holds every int exactly), writing the qualifying row positions to out.
+         * @return  the number of qualifying rows
+         */
+        private int filter (int [] c, int [] sel, int m, double v, int [] out)
+        {
+            var k = 0;
+            for (var i = 0; i < m; i++) {
+                var r = (sel == null) ? i : sel [i];
+                out [k] = r;
+                k += test (c [r], v) ? 1 : 0;
+            } // for
+            return k;
+        } // filter
+
+        /********************************************************************************
+         * Filter a long column against a non-integral constant (compared in double),
+         * writing the qualifying row positions to out.
+         * @return  the number of qualifying rows
+         */
+        private int filter (long [] c, int [] sel, int m, double v, int [] out)
+        {
+            var k = 0;
+            for (var i = 0; i < m; i++) {
+                var r = (sel == null) ? i : sel [i];
+                out [k] = r;
+                k += test (c [r], v) ? 1 : 0;
+            } // for
+            return k;
+        } // filter
+
+        /********************************************************************************
+         * Compare x to v in double arithmetic (so NaN satisfies only !=).
+         */
+        private boolean test (double x, double v)
+        {
+            switch (op) {
+            case EQ: return x == v;
+            case NE: return x != v;
+            case LT: return x <  v;
+            case LE: return x <= v;
+            case GT: return x >  v;
+            default: return x >= v;
+            } // switch
+        } // test
+
+        /********************************************************************************
+         * Filter a dictionary-coded String column, writing the qualifying row positions to
+         * out.  Equality tests look the constant up once and compare codes; ordering tests
+         * compare the decoded strings.
+         * @return  the number of qualifying rows
+         */
+        private int filter (int [] c, Dictionary d, int [] sel, int m, int [] out)
+        {
+            if (op == Cmp.EQ || op == Cmp.NE) {
+                var v = d.lookup ((String) value);
+                if (v >= 0) return filter (c, sel, m, v, out);
+                if (op == Cmp.EQ) return 0;
+                for (var i = 0; i < m; i++) out [i] = (sel == null) ? i : sel [i];
+                return m;
+            } // if
+            var k = 0;
+            for (var i = 0; i < m; i++) {
+                var r = (sel == null) ? i : sel [i];
+                out [k] = r;
+                k += op.test (d.decode (c [r]).compareTo ((String) value)) ? 1 : 0;
+            } // for
+            return k;
+        } // filter
+
+        /********************************************************************************
+         * Filter an int column, writing the qualifying row positions to out.
+         * @return  the number of qualifying rows
+         */
+        private int filter (int [] c, int [] sel, int m, int v, int [] out)
+        {
+            var k = 0;
+            switch (op) {
+            case EQ: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] == v) ? 1 : 0; } break;
+            case NE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] != v) ? 1 : 0; } break;
+            case LT: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] <  v) ? 1 : 0; } break;
+            case LE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] <= v) ? 1 : 0; } break;
+            case GT: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] >  v) ? 1 : 0; } break;
+            case GE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] >= v) ? 1 : 0; } break;
+            } // switch
+            return k;
+        } // filter
+
+        /********************************************************************************
+         * Filter a long column, writing the qualifying row positions to out.
+         * @return  the number of qualifying rows
+         */
+        private int filter (long [] c, int [] sel, int m, long v, int [] out)
+        {
+            var k = 0;
+            switch (op) {
+            case EQ: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] == v) ? 1 : 0; } break;
+            case NE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] != v) ? 1 : 0; } break;
+            case LT: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] <  v) ? 1 : 0; } break;
+            case LE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] <= v) ? 1 : 0; } break;
+            case GT: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] >  v) ? 1 : 0; } break;
+            case GE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] >= v) ? 1 : 0; } break;
+            } // switch
+            return k;
+        } // filter
+
+        /********************************************************************************
+         * Filter a double column, writing the qualifying row positions to out.
+         * @return  the number of qualifying rows
+         */
+        private int filter (double [] c, int [] sel, int m, double v, int [] out)
+        {
+            var k = 0;
+            switch (op) {
+            case EQ: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] == v) ? 1 : 0; } break;
+            case NE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] != v) ? 1 : 0; } break;
+            case LT: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] <  v) ? 1 : 0; } break;
+            case LE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] <= v) ? 1 : 0; } break;
+            case GT: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] >  v) ? 1 : 0; } break;
+            case GE: for (var i = 0; i < m; i++) { var r = (sel == null) ? i : sel [i]; out [k] = r; k += (c [r] >= v) ? 1 : 0; } break;
+            } // switch
+            return k;
+        } // filter
+
+        /********************************************************************************
+         * Filter an object column using compareTo, writing the qualifying row positions
+         * to out.
+         * @return  the number of qualifying rows
+         */
+        @SuppressWarnings("unchecked")
+        private int filter (Object [] c, int [] sel, int m, int [] out)
+        {
+            var k = 0;
+            for (var i = 0; i < m; i++) {
+                var r = (sel == null) ? i : sel [i];
+                out [k] = r;
+                k += op.test (((Comparable) c [r]).compareTo (value)) ? 1 : 0;
+            } // for
+            return k;
+        } // filter
+
+    } // Filter class
+
+    /************************************************************************************
+     * The Project operator keeps only some of the column vectors of each batch (sharing,
+     * not copying, them).
+     */
+    static class Project
+            extends BatchOperator
+    {
+        private final BatchOperator input;
+        private final int [] pos;
+
+        Project (BatchOperator _input, String [] attrs)
+        {
+            super (attrs, pick (_input, attrs),
+                   Arrays.asList (attrs).containsAll (Arrays.asList (_input.key)) ? _input.key : attrs,
+                   _input.mapType);
+            input = _input;
+            pos   = new int [attrs.length];
+            for (var j = 0; j < attrs.length; j++) pos [j] = input.col (attrs [j]);
+        } // constructor
+
+        private static Class [] pick (BatchOperator input, String [] attrs)
+        {
+            var d = new Class [attrs.length];
+            for (var j = 0; j < attrs.length; j++) d [j] = input.domain [input.col (attrs [j])];
+            return d;
+        } // pick
+
+        public void open () { input.open (); }
+
+        public Batch nextBatch ()
+        {
+            var b = input.nextBatch ();
+            if (b == null) return null;
+            var vec  = new Object [pos.length];
+            var dict = new Dictionary [pos.length];
+            for (var j = 0; j < pos.length; j++) {
+                vec [j]  = b.vec [pos [j]];
+                dict [j] = b.dict [pos [j]];
+            } // for
+            var p  = new Batch (domain, vec, dict, b.n);
+            p.sel  = b.sel;
+            p.nSel = b.nSel;
+            return p;
+        } // nextBatch
+
+        public void close () { input.close (); }
+
+    } // Project class
+
+} // BatchOperator class
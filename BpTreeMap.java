@@ -5,8 +5,12 @@ package AppSlash.Code;
  * @author  John Miller
  */
 
-import java.io.Serializable;
+import java.io.*;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
 
 import static java.lang.System.out;
@@ -18,6 +22,8 @@ import static java.lang.System.out;
  * Internal nodes will contain divider keys such that each divider key corresponds to
  * the largest key in its left subtree (largest left).  Keys in left subtree are "<=",
  * while keys in right subtree are ">".
+ * A tree may be saved to a page file (one node per page) and reopened lazily, in which
+ * case nodes are faulted in from the file the first time they are reached.
  */
 public class BpTreeMap <K extends Comparable <K>, V>
         extends AbstractMap <K, V>
@@ -25,20 +31,23 @@ public class BpTreeMap <K extends Comparable <K>, V>
 {
     /** The debug flag
      */
-    private static final boolean DEBUG = true;
+    private static final boolean DEBUG = false;
 
-    /** The maximum fanout (number of children) for a B+Tree node.
-     *  May wish to increase for better performance for Program 3.
+    /** The default maximum fanout (number of children) for a B+Tree node.
      */
     private static final int ORDER = 5;
 
+    /** The maximum fanout (number of children) for a node of this B+Tree.
+     */
+    private final int order;
+
     /** The maximum number of keys
      */
-    private static final int MAX = ORDER - 1;
+    private final int max;
 
     /** The half the number of keys (larger half)
      */
-    private static final int MID = ORDER / 2;
+    private final int mid;
 
     /** The class for type K.
      */
@@ -48,6 +57,18 @@ public class BpTreeMap <K extends Comparable <K>, V>
      */
     private final Class <V> classV;
 
+    /** The default fill factor (fraction of the maximum number of keys) for bulk loading.
+     */
+    private static final double FILL = 0.75;
+
+    /** The magic number identifying a B+Tree page file.
+     */
+    private static final int MAGIC = 0x42505447;
+
+    /** The length (in bytes) of the page file header.
+     */
+    private static final int HEADER = 24;
+
     /********************************************************************************
      * This inner class defines nodes that are stored in the B+tree map.
      */
@@ -57,6 +78,7 @@ public class BpTreeMap <K extends Comparable <K>, V>
         int       nKeys;                                              // number of active keys
         K []      key;                                                // array of keys
         Object [] ref;                                                // array of references/pointers
+        int       page = -1;                                          // page holding the node if not yet loaded
 
         /****************************************************************************
          * Construct a BpTree node.
@@ -67,9 +89,9 @@ public class BpTreeMap <K extends Comparable <K>, V>
         {
             isLeaf = _isLeaf;
             nKeys  = 0;
-            key    = (K []) Array.newInstance (classK, MAX);
-            if (isLeaf) ref = new Object [ORDER];
-            else        ref = (Node []) Array.newInstance (Node.class, ORDER);
+            key    = (K []) Array.newInstance (classK, max);
+            if (isLeaf) ref = new Object [order];
+            else        ref = (Node []) Array.newInstance (Node.class, order);
         } // constructor
 
         /****************************************************************************
@@ -86,14 +108,19 @@ public class BpTreeMap <K extends Comparable <K>, V>
         } // copy
 
         /****************************************************************************
-         * Find the "<=" match position in this node.
+         * Find the "<=" match position in this node, i.e., the first position whose
+         * key is at least k, using binary search over the sorted keys.
          * @param k  the key to be matched.
          * @return  the position of match within node, where nKeys indicates no match
          */
         int find (K k)
         {
-            for (var i  = 0; i < nKeys; i++) if (k.compareTo (key[i]) <= 0) return i;
-            return nKeys;
+            int lo = 0, hi = nKeys;
+            while (lo < hi) {
+                var m = (lo + hi) >>> 1;
+                if (k.compareTo (key[m]) <= 0) hi = m; else lo = m + 1;
+            } // while
+            return lo;
         } // find
 
         /****************************************************************************
@@ -113,12 +140,36 @@ public class BpTreeMap <K extends Comparable <K>, V>
 
     /** The first (leftmost) leaf in the B+Tree
      */
-    private final Node firstLeaf;
+    private Node firstLeaf;
+
+    /** The page file the tree was opened from (null if the tree was built in memory)
+     */
+    private transient FileChannel pageFile;
+
+    /** The path of the page file the tree was opened from (to reopen it after close)
+     */
+    private transient String pagePath;
+
+    /** The offset of the page directory in the page file
+     */
+    private long dirOffset;
+
+    /** The nodes created for pages of the page file (so each page has one node)
+     */
+    private transient Map <Integer, Node> pageNode;
 
     /** Flag indicating whether a split at the level below has occurred that needs to be handled
      */
     private boolean hasSplit = false;
 
+    /** The divider key to insert at the next level up when a split has occurred
+     */
+    private K divKey = null;
+
+    /** The value replaced by the last put of an existing key (null if the key was new)
+     */
+    private V oldValue = null;
+
     /** The counter for the number nodes accessed (for performance testing)
      */
     private int count = 0;
@@ -128,18 +179,55 @@ public class BpTreeMap <K extends Comparable <K>, V>
     private int keyCount = 0;
 
     /********************************************************************************
-     * Construct an empty B+Tree map.
+     * Construct an empty B+Tree map of the default order.
      * @param _classK  the class for keys (K)
      * @param _classV  the class for values (V)
      */
     public BpTreeMap (Class <K> _classK, Class <V> _classV)
     {
+        this (_classK, _classV, ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty B+Tree map whose nodes have the given order (maximum fanout),
+     * e.g., 64 to 256 for trees kept in memory, or enough to fill a disk page.
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     * @param _order   the maximum number of children of a node (at least 5, so that
+     *                 splitting an internal node leaves keys on both sides)
+     */
+    public BpTreeMap (Class <K> _classK, Class <V> _classV, int _order)
+    {
+        if (_order < ORDER) throw new IllegalArgumentException ("B+Tree order must be at least " + ORDER + ": " + _order);
         classK    = _classK;
         classV    = _classV;
+        order     = _order;
+        max       = order - 1;
+        mid       = order / 2;
         root      = new Node (true);
         firstLeaf = root;
     } // constructor
 
+    /********************************************************************************
+     * Return the order (maximum fanout) of the nodes of this B+Tree.
+     * @return  the order of the B+Tree
+     */
+    public int order ()
+    {
+        return order;
+    } // order
+
+    /********************************************************************************
+     * Return the number of nodes accessed by lookups so far, and reset the counter.
+     * @return  the number of nodes accessed
+     */
+    public int nodesAccessed ()
+    {
+        var n = count;
+        count = 0;
+        return n;
+    } // nodesAccessed
+
     /********************************************************************************
      * Return null to use the natural order based on the key type.  This requires the
      * key type to implement Comparable.
@@ -150,36 +238,13 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // comparator
 
     /********************************************************************************
-     * Return a set containing all the entries as pairs of keys and values.
+     * Return a set view of all the entries as pairs of keys and values.  The view walks
+     * the leaf level, so the entries iterate in key order, and nothing is copied.
      * @return  the set view of the map
      */
     public Set <Map.Entry <K, V>> entrySet ()
     {
-        var enSet = new HashSet <Map.Entry <K, V>> ();
-
-        //  T O   B E   I M P L E M E N T E D
-        Node leftNode = firstLeaf;
-        var i=0;
-        var returnMap = new HashMap<K, V>();
-
-        while(leftNode.ref[i]!=null && i<leftNode.nKeys+1)
-        {
-            if(i!=leftNode.nKeys)
-            {
-                // add key and value from current node
-                returnMap.put((K)leftNode.key[i],(V)leftNode.ref[i]);
-                i++;
-            }
-            else
-            {
-                // point to new node and extract data from new node
-                leftNode = (Node) leftNode.ref[leftNode.nKeys];
-                i=0;
-            }
-        }
-
-        enSet.addAll(returnMap.entrySet());
-        return enSet;
+        return new SubMap (null, null).entrySet ();
     } // entrySet
 
     /********************************************************************************
@@ -190,29 +255,164 @@ public class BpTreeMap <K extends Comparable <K>, V>
     @SuppressWarnings("unchecked")
     public V get (Object key)
     {
-        return find ((K) key, root);
+        return find ((K) key, load (root));
     } // get
 
     /********************************************************************************
-     * Put the key-value pair in the B+Tree map.
+     * Return whether the B+Tree map contains the key (by lookup rather than by scanning
+     * the entries, as AbstractMap would).
+     * @param key  the key to look for
+     * @return  whether the key has a (non-null) value
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map, replacing the value of an existing key.
      * @param key    the key to insert
      * @param value  the value to insert
-     * @return  null, not the previous value for this key
+     * @return  the previous value for this key, or null if the key is new
      */
     public V put (K key, V value)
     {
-        keyCount++;
-        insert (key, value, root);
-        return null;
+        oldValue = null;
+        insert (key, value, load (root));
+        if (oldValue == null) keyCount++;                                    // only new keys are counted
+        return oldValue;
     } // put
 
+    /********************************************************************************
+     * Remove the key (and its value) from the B+Tree map.  The key is deleted from its
+     * leaf, and any node left with fewer than the minimum number of keys borrows from
+     * or is merged with a sibling on the way back up; a root left with a single child
+     * is replaced by that child.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        var r   = load (root);
+        var old = delete ((K) key, r);
+        if (old == null) return null;
+        keyCount--;
+        if (! r.isLeaf && r.nKeys == 0) root = child (r, 0);                 // shrink the tree by a level
+        return old;
+    } // remove
+
+    /********************************************************************************
+     * Bulk load this (empty) B+Tree map from entries sorted by key, filling nodes to the
+     * default fill factor.  For duplicate keys the last entry is kept, as put would.
+     * @param it  the iterator over the entries in ascending key order
+     */
+    public void bulkLoad (Iterator <Map.Entry <K, V>> it)
+    {
+        bulkLoad (it, FILL);
+    } // bulkLoad
+
+    /********************************************************************************
+     * Bulk load this (empty) B+Tree map from entries sorted by key.  Rather than
+     * inserting the entries one at a time from the root, the leaves are filled left to
+     * right (to the given fill factor, spreading the keys evenly) and linked, and each
+     * internal level is then built bottom-up over the level below, in O(n) overall.
+     * For duplicate keys the last entry is kept, as put would.
+     * @param it    the iterator over the entries in ascending key order
+     * @param fill  the fill factor: the fraction of the max keys to place in each node
+     */
+    @SuppressWarnings("unchecked")
+    public void bulkLoad (Iterator <Map.Entry <K, V>> it, double fill)
+    {
+        if (keyCount > 0) throw new IllegalStateException ("bulkLoad requires an empty B+Tree");
+        if (fill <= 0.0 || fill > 1.0) throw new IllegalArgumentException ("fill factor must be in (0, 1]");
+
+        var keys = new ArrayList <K> ();
+        var vals = new ArrayList <V> ();
+        while (it.hasNext ()) {
+            var e = it.next ();
+            var k = e.getKey ();
+            if (! keys.isEmpty ()) {
+                var c = k.compareTo (keys.get (keys.size () - 1));
+                if (c < 0) throw new IllegalArgumentException ("bulkLoad: keys not in ascending order at " + k);
+                if (c == 0) {                                          // duplicate key: keep the last
+                    vals.set (vals.size () - 1, e.getValue ());
+                    continue;
+                } // if
+            } // if
+            keys.add (k);
+            vals.add (e.getValue ());
+        } // while
+        if (keys.isEmpty ()) return;
+
+        var n      = keys.size ();
+        var nodes  = new ArrayList <Node> ();                         // the current level
+        var maxKey = new ArrayList <K> ();                            // the largest key under each node
+        var nLeaf  = (n + perNode (fill, 1) - 1) / perNode (fill, 1);
+        for (int l = 0, i = 0; l < nLeaf; l++) {                      // fill and link the leaves
+            var leaf = new Node (true);
+            leaf.nKeys = share (n, nLeaf, l);
+            for (var j = 0; j < leaf.nKeys; j++, i++) { leaf.key[j] = keys.get (i); leaf.ref[j] = vals.get (i); }
+            if (l > 0) { var prev = nodes.get (l - 1); prev.ref[prev.nKeys] = leaf; }
+            nodes.add (leaf);
+            maxKey.add (keys.get (i - 1));
+        } // for
+        firstLeaf = nodes.get (0);
+
+        var fanout = perNode (fill, 2) + 1;
+        while (nodes.size () > 1) {                                   // build the next level up
+            var m       = nodes.size ();
+            var nParent = (m + fanout - 1) / fanout;
+            var parents = new ArrayList <Node> (nParent);
+            var pMax    = new ArrayList <K> (nParent);
+            for (int p = 0, c = 0; p < nParent; p++) {
+                var node = new Node (false);
+                var kids = share (m, nParent, p);
+                for (var j = 0; j < kids; j++, c++) {
+                    node.ref[j] = nodes.get (c);
+                    if (j < kids - 1) node.key[j] = maxKey.get (c);   // divider key - largest left
+                } // for
+                node.nKeys = kids - 1;
+                parents.add (node);
+                pMax.add (maxKey.get (c - 1));
+            } // for
+            nodes  = parents;
+            maxKey = pMax;
+        } // while
+        root     = nodes.get (0);
+        keyCount = n;
+    } // bulkLoad
+
+    /********************************************************************************
+     * Return the number of keys to place in each node for the given fill factor.
+     * @param fill  the fill factor
+     * @param min   the minimum number of keys
+     * @return  the number of keys per node
+     */
+    private int perNode (double fill, int min)
+    {
+        return Math.min (max, Math.max (min, (int) Math.round (max * fill)));
+    } // perNode
+
+    /********************************************************************************
+     * Return the size of the p-th of parts near-equal shares of total items.
+     * @param total  the number of items
+     * @param parts  the number of shares
+     * @param p      the share number
+     * @return  the number of items in share p
+     */
+    private static int share (int total, int parts, int p)
+    {
+        return total / parts + (p < total % parts ? 1 : 0);
+    } // share
+
     /********************************************************************************
      * Return the first (smallest) key in the B+Tree map.
      * @return  the first key in the B+Tree map.
      */
     public K firstKey ()
     {
-        return firstLeaf.key[0];
+        return load (firstLeaf).key[0];
     } // firstKey
 
     /********************************************************************************
@@ -222,9 +422,9 @@ public class BpTreeMap <K extends Comparable <K>, V>
     public K lastKey ()
     {
         //  T O   B E   I M P L E M E N T E D
-        var anyNode = root;
+        var anyNode = load (root);
         while(!anyNode.isLeaf) {
-            anyNode=(Node)anyNode.ref[anyNode.nKeys]; //the last pointer node
+            anyNode=child(anyNode, anyNode.nKeys); //the last pointer node
         }
         //System.out.println("Largest Key:" + anyNode.key[anyNode.nKeys-1]);
         return anyNode.key[anyNode.nKeys-1];
@@ -233,72 +433,185 @@ public class BpTreeMap <K extends Comparable <K>, V>
     } // lastKey
 
     /********************************************************************************
-     * Return the portion of the B+Tree map where key < toKey.
+     * Return a view of the portion of the B+Tree map where key < toKey.
+     * @param toKey  the upper bound (exclusive)
      * @return  the submap with keys in the range [firstKey, toKey)
      */
     public SortedMap <K,V> headMap (K toKey)
     {
-        //  T O   B E   I M P L E M E N T E D
-
-        return subMap(null,toKey);
-
-        //return null;
+        return new SubMap (null, toKey);
     } // headMap
 
     /********************************************************************************
-     * Return the portion of the B+Tree map where fromKey <= key.
+     * Return a view of the portion of the B+Tree map where fromKey <= key.
+     * @param fromKey  the lower bound (inclusive)
      * @return  the submap with keys in the range [fromKey, lastKey]
      */
     public SortedMap <K,V> tailMap (K fromKey)
     {
-        //  T O   B E   I M P L E M E N T E D
-
-        return subMap(fromKey,null);
-
-        //return null;
+        return new SubMap (fromKey, null);
     } // tailMap
 
     /********************************************************************************
-     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
-     * i.e., fromKey <= key < toKey.
+     * Return a view of the portion of the B+Tree map whose keys are between fromKey and
+     * toKey, i.e., fromKey <= key < toKey.  The view is backed by the leaf level: it
+     * descends once to the first leaf in range and then follows the leaf links, so a
+     * range query costs O(log n + k) with no copying.  A null bound is unbounded.
+     * @param fromKey  the lower bound (inclusive)
+     * @param toKey    the upper bound (exclusive)
      * @return  the submap with keys in the range [fromKey, toKey)
      */
     public SortedMap <K,V> subMap (K fromKey, K toKey)
     {
-        //  T O   B E   I M P L E M E N T E D
-        BpTreeMap <K, V> newMap = new BpTreeMap <> (classK, classV);
+        return new SubMap (fromKey, toKey);
+    } // subMap
 
-        K firstKey;
-        K lastKey;
-        if(fromKey == null){
-            firstKey = firstKey();
-        }
-        else {
-            firstKey = fromKey;
-        }
+    /********************************************************************************
+     * This inner class provides views of the key range [lo, hi) of the B+Tree map, where
+     * a null bound is unbounded.  Reads and puts go through to the map.
+     */
+    private class SubMap
+            extends AbstractMap <K, V>
+            implements SortedMap <K, V>
+    {
+        final K lo, hi;
 
-        if(toKey == null){
-            lastKey = lastKey();
-        }
-        else {
-            lastKey = toKey;
-        }
+        SubMap (K _lo, K _hi)
+        {
+            if (_lo != null && _hi != null && _lo.compareTo (_hi) > 0) {
+                throw new IllegalArgumentException ("fromKey > toKey");
+            } // if
+            lo = _lo;
+            hi = _hi;
+        } // constructor
 
-        var entries = this.entrySet();
+        boolean inRange (K k)
+        {
+            return (lo == null || k.compareTo (lo) >= 0) && (hi == null || k.compareTo (hi) < 0);
+        } // inRange
 
-        for (var e : entries)
+        public Comparator <? super K> comparator ()  { return null; }
+
+        @SuppressWarnings("unchecked")
+        public V get (Object key)
         {
-            // If the entry is within the parameters
-            if (e.getKey().compareTo(firstKey) >= 0 && e.getKey().compareTo(lastKey) < 0)
-            {
-                newMap.put(e.getKey(), e.getValue()); // Add the entry to the subtree
-            }
-        }
+            return inRange ((K) key) ? BpTreeMap.this.get (key) : null;
+        } // get
 
-        return newMap;
+        @SuppressWarnings("unchecked")
+        public boolean containsKey (Object key)
+        {
+            return get (key) != null;
+        } // containsKey
 
-        //return null;
-    } // subMap
+        public V put (K key, V value)
+        {
+            if (! inRange (key)) throw new IllegalArgumentException ("key out of range: " + key);
+            return BpTreeMap.this.put (key, value);
+        } // put
+
+        public SortedMap <K, V> subMap (K fromKey, K toKey)
+        {
+            return new SubMap (max (lo, fromKey), min (hi, toKey));
+        } // subMap
+
+        public SortedMap <K, V> headMap (K toKey)  { return new SubMap (lo, min (hi, toKey)); }
+        public SortedMap <K, V> tailMap (K fromKey) { return new SubMap (max (lo, fromKey), hi); }
+
+        public K firstKey ()
+        {
+            var it = new LeafIterator (lo, hi);
+            if (! it.hasNext ()) throw new NoSuchElementException ();
+            return it.next ().getKey ();
+        } // firstKey
+
+        public K lastKey ()
+        {
+            K last = null;
+            if (hi == null && keyCount > 0) {
+                last = BpTreeMap.this.lastKey ();                     // unbounded above: the map's last key
+                if (lo != null && last.compareTo (lo) < 0) last = null;
+            } else {
+                for (var it = new LeafIterator (lo, hi); it.hasNext (); ) last = it.next ().getKey ();
+            } // if
+            if (last == null) throw new NoSuchElementException ();
+            return last;
+        } // lastKey
+
+        public Set <Map.Entry <K, V>> entrySet ()
+        {
+            return new AbstractSet <Map.Entry <K, V>> () {
+                public Iterator <Map.Entry <K, V>> iterator () { return new LeafIterator (lo, hi); }
+                public int size ()
+                {
+                    var n = 0;
+                    for (var it = iterator (); it.hasNext (); it.next ()) n++;
+                    return n;
+                } // size
+                public boolean isEmpty () { return ! iterator ().hasNext (); }
+            };
+        } // entrySet
+
+    } // SubMap inner class
+
+    /********************************************************************************
+     * This inner class iterates over the entries with keys in [lo, hi) in key order by
+     * descending to the first leaf in range and then following the leaf links.
+     */
+    private class LeafIterator
+            implements Iterator <Map.Entry <K, V>>
+    {
+        Node leaf;                                                    // the current leaf
+        int  i;                                                       // the position in the current leaf
+        final K hi;                                                   // the upper bound (exclusive)
+
+        LeafIterator (K lo, K _hi)
+        {
+            hi   = _hi;
+            leaf = load (root);
+            if (lo == null) {
+                leaf = load (firstLeaf);
+            } else {
+                while (! leaf.isLeaf) leaf = child (leaf, leaf.find (lo));
+                i = leaf.find (lo);                                   // first key >= lo
+            } // if
+        } // constructor
+
+        public boolean hasNext ()
+        {
+            while (leaf != null && i >= leaf.nKeys) {                // move on to the next leaf
+                leaf = child (leaf, leaf.nKeys);
+                i    = 0;
+            } // while
+            return leaf != null && (hi == null || leaf.key[i].compareTo (hi) < 0);
+        } // hasNext
+
+        @SuppressWarnings("unchecked")
+        public Map.Entry <K, V> next ()
+        {
+            if (! hasNext ()) throw new NoSuchElementException ();
+            var e = new AbstractMap.SimpleImmutableEntry <> (leaf.key[i], (V) leaf.ref[i]);
+            i++;
+            return e;
+        } // next
+
+    } // LeafIterator inner class
+
+    /********************************************************************************
+     * Return the larger of two lower bounds (null is unbounded).
+     */
+    private K max (K a, K b)
+    {
+        return (a == null) ? b : (b == null || a.compareTo (b) >= 0) ? a : b;
+    } // max
+
+    /********************************************************************************
+     * Return the smaller of two upper bounds (null is unbounded).
+     */
+    private K min (K a, K b)
+    {
+        return (a == null) ? b : (b == null || a.compareTo (b) <= 0) ? a : b;
+    } // min
 
     /********************************************************************************
      * Return the size (number of keys) in the B+Tree.
@@ -309,6 +622,397 @@ public class BpTreeMap <K extends Comparable <K>, V>
         return keyCount;
     } // size
 
+    /********************************************************************************
+     * Save the B+Tree to a page file with one node per page.  Pages are numbered in
+     * breadth-first order; internal nodes refer to their children and leaves to the
+     * next leaf by page number, and a directory after the pages gives the offset of each
+     * page (the last 8 bytes of the file give the offset of the directory).  Keys and
+     * values are written with a tagged binary encoding of their Comparable components
+     * (see putValue), except that the keys of a node that are all KeyTypes with
+     * normalized encodings are prefix compressed (see putKeys).
+     * @param path  the path of the page file
+     */
+    public void save (String path)
+            throws IOException
+    {
+        var nodes = new ArrayList <Node> ();                          // nodes in page order
+        var id    = new IdentityHashMap <Node, Integer> ();
+        nodes.add (root); id.put (root, 0);
+        for (var p = 0; p < nodes.size (); p++) {
+            var n = load (nodes.get (p));
+            if (n.isLeaf) continue;
+            for (var i = 0; i <= n.nKeys; i++) {
+                var c = child (n, i);
+                id.put (c, nodes.size ());
+                nodes.add (c);
+            } // for
+        } // for
+
+        var offset = new long [nodes.size ()];
+        try (var os = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (path), 1 << 16))) {
+            os.writeInt (MAGIC); os.writeInt (order); os.writeInt (keyCount); os.writeInt (nodes.size ());
+            os.writeInt (0); os.writeInt (id.get (load (firstLeaf)));
+            var dir = HEADER + writePages (nodes, id, offset, os);
+            for (var off : offset) os.writeLong (off);
+            os.writeLong (dir);
+        } // try
+    } // save
+
+    /********************************************************************************
+     * Write the nodes in page order, each as its length followed by its encoding, and
+     * record the offsets of the pages.
+     * @param nodes   the nodes in page order
+     * @param id      the page number of each node
+     * @param offset  the array to fill with the page offsets
+     * @param os      the stream to write the pages to
+     * @return  the total number of bytes in the pages
+     */
+    private long writePages (List <Node> nodes, Map <Node, Integer> id, long [] offset, DataOutputStream os)
+            throws IOException
+    {
+        var pos = (long) HEADER;
+        var bs  = new ByteArrayOutputStream ();
+        var ds  = new DataOutputStream (bs);
+        for (var p = 0; p < nodes.size (); p++) {
+            var n = nodes.get (p);
+            bs.reset ();
+            ds.writeBoolean (n.isLeaf);
+            ds.writeInt (n.nKeys);
+            putKeys (ds, n);
+            if (n.isLeaf) {
+                for (var i = 0; i < n.nKeys; i++) putValue (ds, n.ref[i]);
+                ds.writeInt (n.ref[n.nKeys] == null ? -1 : id.get (n.ref[n.nKeys]));
+            } else {
+                for (var i = 0; i <= n.nKeys; i++) ds.writeInt (id.get (n.ref[i]));
+            } // if
+            offset [p] = pos;
+            pos += 4 + bs.size ();
+            os.writeInt (bs.size ());
+            bs.writeTo (os);
+        } // for
+        return pos - HEADER;
+    } // writePages
+
+    /********************************************************************************
+     * Open a B+Tree saved in a page file.  Only the header is read: the root and all
+     * other nodes are faulted in from the file when first reached, so opening takes
+     * constant time regardless of the size of the tree.
+     * @param path     the path of the page file
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     * @return  the B+Tree map backed by the page file
+     */
+    public static <K extends Comparable <K>, V> BpTreeMap <K, V> open (String path, Class <K> _classK, Class <V> _classV)
+            throws IOException
+    {
+        var ch  = FileChannel.open (Paths.get (path), StandardOpenOption.READ);
+        var hdr = ByteBuffer.allocate (HEADER);
+        while (hdr.hasRemaining () && ch.read (hdr, hdr.position ()) >= 0) ;
+        hdr.flip ();
+        if (hdr.remaining () < HEADER || hdr.getInt () != MAGIC) {
+            ch.close ();
+            throw new IOException ("not a B+Tree page file: " + path);
+        } // if
+        var bpt = new BpTreeMap <K, V> (_classK, _classV, hdr.getInt ());   // the order it was saved with
+        bpt.keyCount  = hdr.getInt ();
+        hdr.getInt ();                                                // number of pages
+        bpt.pageFile  = ch;
+        bpt.pagePath  = path;
+        bpt.pageNode  = new HashMap <> ();
+        bpt.root      = bpt.stub (hdr.getInt ());
+        bpt.firstLeaf = bpt.stub (hdr.getInt ());
+        bpt.dirOffset = bpt.read (ch.size () - 8, 8).getLong ();
+        return bpt;
+    } // open
+
+    /********************************************************************************
+     * Close the page file the tree was opened from, if any.  The file is reopened if a
+     * node that has not been read yet is reached later.
+     */
+    public synchronized void close ()
+            throws IOException
+    {
+        if (pageFile == null) return;
+        pageFile.close ();
+        pageFile = null;
+    } // close
+
+    /********************************************************************************
+     * Return the number of keys recorded in a B+Tree page file (without opening it).
+     * @param path  the path of the page file
+     * @return  the number of keys, or -1 if the file is not a B+Tree page file
+     */
+    public static int keyCount (String path)
+    {
+        try (var is = new DataInputStream (new FileInputStream (path))) {
+            if (is.readInt () != MAGIC) return -1;
+            is.readInt ();                                            // order
+            return is.readInt ();
+        } catch (IOException ex) {
+            return -1;
+        } // try
+    } // keyCount
+
+    /********************************************************************************
+     * Return the node for the given page, creating an unloaded node if it has not been
+     * reached yet.
+     * @param page  the page number
+     * @return  the node for the page
+     */
+    private Node stub (int page)
+    {
+        if (page < 0) return null;
+        return pageNode.computeIfAbsent (page, p -> { var n = new Node (false); n.page = p; return n; });
+    } // stub
+
+    /********************************************************************************
+     * Return the i-th child (or, for a leaf with i == nKeys, the next leaf) of node n,
+     * loading it from the page file if needed.
+     * @param n  the parent node
+     * @param i  the position of the child
+     * @return  the loaded child node
+     */
+    private Node child (Node n, int i)
+    {
+        return load ((Node) n.ref[i]);
+    } // child
+
+    /********************************************************************************
+     * Make sure node n is loaded, reading its page from the page file if needed.
+     * @param n  the node (may be null)
+     * @return  the loaded node
+     */
+    @SuppressWarnings("unchecked")
+    private Node load (Node n)
+    {
+        if (n == null || n.page < 0) return n;
+        try {
+            var off = read (dirOffset + 8L * n.page, 8).getLong ();
+            var len = read (off, 4).getInt ();
+            var ds  = new DataInputStream (new ByteArrayInputStream (read (off + 4, len).array ()));
+            var leaf = ds.readBoolean ();
+            var fresh = new Node (leaf);
+            n.isLeaf = leaf;
+            n.key    = fresh.key;
+            n.ref    = fresh.ref;
+            n.nKeys  = ds.readInt ();
+            getKeys (ds, n);
+            if (leaf) {
+                for (var i = 0; i < n.nKeys; i++) n.ref[i] = getValue (ds);
+                n.ref[n.nKeys] = stub (ds.readInt ());
+            } else {
+                for (var i = 0; i <= n.nKeys; i++) n.ref[i] = stub (ds.readInt ());
+            } // if
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        n.page = -1;
+        return n;
+    } // load
+
+    /********************************************************************************
+     * Read len bytes at position pos of the page file.
+     * @param pos  the position in the file
+     * @param len  the number of bytes
+     * @return  a buffer holding the bytes
+     */
+    private ByteBuffer read (long pos, int len)
+            throws IOException
+    {
+        if (pageFile == null) pageFile = FileChannel.open (Paths.get (pagePath), StandardOpenOption.READ);
+        var b = ByteBuffer.allocate (len);
+        while (b.hasRemaining ()) {
+            if (pageFile.read (b, pos + b.position ()) < 0) throw new EOFException ("truncated B+Tree page file");
+        } // while
+        return b.flip ();
+    } // read
+
+    /********************************************************************************
+     * Write the keys of node n.  When they are all KeyTypes with normalized encodings
+     * (see KeyType.encoded), which sort as the keys do, the prefix shared by every key
+     * in the node (that of its first and last keys) is written once, followed by the
+     * remaining suffix of each key; otherwise each key is written with putValue.
+     * @param os  the data output stream
+     * @param n   the node whose keys are written
+     */
+    private void putKeys (DataOutputStream os, Node n)
+            throws IOException
+    {
+        var enc = (n.nKeys > 0) ? new byte [n.nKeys][] : null;
+        for (var i = 0; enc != null && i < n.nKeys; i++) {
+            enc[i] = (n.key[i] instanceof KeyType k) ? k.encoded () : null;
+            if (enc[i] == null) enc = null;
+        } // for
+        if (enc == null) {
+            for (var i = 0; i < n.nKeys; i++) putValue (os, n.key[i]);
+            return;
+        } // if
+
+        var first = enc[0];
+        var last  = enc[n.nKeys - 1];
+        var pre   = Arrays.mismatch (first, last);
+        if (pre < 0) pre = first.length;                              // a single (or repeated) key
+        os.writeByte (12);
+        putVarint (os, pre);
+        os.write (first, 0, pre);
+        for (var b : enc) {
+            putVarint (os, b.length - pre);
+            os.write (b, pre, b.length - pre);
+        } // for
+    } // putKeys
+
+    /********************************************************************************
+     * Read the keys of node n (whose nKeys is set) written by putKeys.
+     * @param is  the data input stream
+     * @param n   the node whose keys are read
+     */
+    @SuppressWarnings("unchecked")
+    private void getKeys (DataInputStream is, Node n)
+            throws IOException
+    {
+        if (n.nKeys == 0) return;
+        var tag = is.readByte ();
+        if (tag != 12) {                                              // keys written by putValue
+            n.key[0] = (K) getValue (is, tag);
+            for (var i = 1; i < n.nKeys; i++) n.key[i] = (K) getValue (is);
+            return;
+        } // if
+
+        var pre = new byte [getVarint (is)];
+        is.readFully (pre);
+        for (var i = 0; i < n.nKeys; i++) {
+            var b = Arrays.copyOf (pre, pre.length + getVarint (is));
+            is.readFully (b, pre.length, b.length - pre.length);
+            n.key[i] = (K) KeyType.decode (b);
+        } // for
+    } // getKeys
+
+    /********************************************************************************
+     * Write a non-negative int using 7 bits per byte, low bits first.
+     */
+    private static void putVarint (DataOutputStream os, int v)
+            throws IOException
+    {
+        for ( ; v >= 0x80; v >>>= 7) os.writeByte ((v & 0x7f) | 0x80);
+        os.writeByte (v);
+    } // putVarint
+
+    /********************************************************************************
+     * Read an int written by putVarint.
+     */
+    private static int getVarint (DataInputStream is)
+            throws IOException
+    {
+        var v = 0;
+        for (var shift = 0; ; shift += 7) {
+            var b = is.readUnsignedByte ();
+            v |= (b & 0x7f) << shift;
+            if (b < 0x80) return v;
+        } // for
+    } // getVarint
+
+    /********************************************************************************
+     * Write a key or value using a tagged encoding: numbers, characters and strings
+     * directly, KeyTypes and Comparable arrays component by component, and any other
+     * Serializable object with Java serialization.
+     * @param os  the data output stream
+     * @param v   the value to write
+     */
+    private static void putValue (DataOutputStream os, Object v)
+            throws IOException
+    {
+        if (v == null)                    { os.writeByte (0); }
+        else if (v instanceof Integer x)  { os.writeByte (1); os.writeInt (x); }
+        else if (v instanceof Long x)     { os.writeByte (2); os.writeLong (x); }
+        else if (v instanceof Double x)   { os.writeByte (3); os.writeDouble (x); }
+        else if (v instanceof Float x)    { os.writeByte (4); os.writeFloat (x); }
+        else if (v instanceof Short x)    { os.writeByte (5); os.writeShort (x); }
+        else if (v instanceof Byte x)     { os.writeByte (6); os.writeByte (x); }
+        else if (v instanceof Character x) { os.writeByte (7); os.writeChar (x); }
+        else if (v instanceof String x) {
+            var b = x.getBytes (StandardCharsets.UTF_8);
+            os.writeByte (8); os.writeInt (b.length); os.write (b);
+        } else if (v instanceof KeyType x) {
+            os.writeByte (9); putValues (os, x.values ());
+        } else if (v instanceof Comparable [] x) {
+            os.writeByte (10); putValues (os, x);
+        } else {
+            var bs = new ByteArrayOutputStream ();
+            try (var oos = new ObjectOutputStream (bs)) { oos.writeObject (v); }
+            os.writeByte (11); os.writeInt (bs.size ()); bs.writeTo (os);
+        } // if
+    } // putValue
+
+    /********************************************************************************
+     * Write an array of values preceded by its length.
+     * @param os  the data output stream
+     * @param v   the values to write
+     */
+    private static void putValues (DataOutputStream os, Comparable [] v)
+            throws IOException
+    {
+        os.writeInt (v.length);
+        for (var x : v) putValue (os, x);
+    } // putValues
+
+    /********************************************************************************
+     * Read a key or value written by putValue.
+     * @param is  the data input stream
+     * @return  the value
+     */
+    private static Object getValue (DataInputStream is)
+            throws IOException
+    {
+        return getValue (is, is.readByte ());
+    } // getValue
+
+    /********************************************************************************
+     * Read a key or value written by putValue whose tag has already been read.
+     * @param is   the data input stream
+     * @param tag  the tag giving the type of the value
+     * @return  the value
+     */
+    private static Object getValue (DataInputStream is, byte tag)
+            throws IOException
+    {
+        switch (tag) {
+        case 0:  return null;
+        case 1:  return is.readInt ();
+        case 2:  return is.readLong ();
+        case 3:  return is.readDouble ();
+        case 4:  return is.readFloat ();
+        case 5:  return is.readShort ();
+        case 6:  return is.readByte ();
+        case 7:  return is.readChar ();
+        case 8:  var b = new byte [is.readInt ()];
+                 is.readFully (b);
+                 return new String (b, StandardCharsets.UTF_8);
+        case 9:  return new KeyType (getValues (is));
+        case 10: return getValues (is);
+        case 11: var o = new byte [is.readInt ()];
+                 is.readFully (o);
+                 try (var ois = new ObjectInputStream (new ByteArrayInputStream (o))) {
+                     return ois.readObject ();
+                 } catch (ClassNotFoundException ex) {
+                     throw new IOException (ex);
+                 } // try
+        default: throw new IOException ("bad value tag " + tag + " in B+Tree page file");
+        } // switch
+    } // getValue
+
+    /********************************************************************************
+     * Read an array of values written by putValues.
+     * @param is  the data input stream
+     * @return  the values
+     */
+    private static Comparable [] getValues (DataInputStream is)
+            throws IOException
+    {
+        var v = new Comparable [is.readInt ()];
+        for (var i = 0; i < v.length; i++) v[i] = (Comparable) getValue (is);
+        return v;
+    } // getValues
+
     /********************************************************************************
      * Print the B+Tree using a pre-order traversal and indenting each level.
      * @param n      the current node to print
@@ -327,7 +1031,7 @@ public class BpTreeMap <K extends Comparable <K>, V>
         for (var i = 0; i < n.nKeys; i++) out.print (n.key[i] + " . ");
         out.println ("]");
         if ( ! n.isLeaf) {
-            for (var i = 0; i <= n.nKeys; i++) print ((Node) n.ref[i], level + 1);
+            for (var i = 0; i <= n.nKeys; i++) print (child (n, i), level + 1);
         } // if
 
         if (n == root) out.println ("-------------------------------------------");
@@ -346,9 +1050,9 @@ public class BpTreeMap <K extends Comparable <K>, V>
         if (i < n.nKeys) {
             K k_i = n.key[i];
             if (n.isLeaf) return (key.compareTo (k_i) == 0) ? (V) n.ref[i] : null;
-            else          return find (key, (Node) n.ref[i]);
+            else          return find (key, child (n, i));
         } else {
-            return (n.isLeaf) ? null : find (key, (Node) n.ref[n.nKeys]);
+            return (n.isLeaf) ? null : find (key, child (n, n.nKeys));
         } // if
     } // find
 
@@ -359,6 +1063,7 @@ public class BpTreeMap <K extends Comparable <K>, V>
      * After the split, the key-ref pair will be wedged into node n or r depending on
      * the value of the key.
      * A split also will require a key-ref pair to be inserted at the next level up.
+     * An existing key has its value replaced instead (the old value is kept in oldValue).
      * @param key  the key to insert
      * @param ref  the value/node to insert
      * @param n    the current node
@@ -367,65 +1072,53 @@ public class BpTreeMap <K extends Comparable <K>, V>
     @SuppressWarnings("unchecked")
     private Node insert (K key, V ref, Node n)
     {
-        out.println ("=============================================================");
-        out.println ("insert: key = " + key);
-        out.println ("=============================================================");
+        if (DEBUG) {
+            out.println ("=============================================================");
+            out.println ("insert: key = " + key);
+            out.println ("=============================================================");
+        } // if
 
         Node r = null;                                                       // holder for right sibling node
 //---------------------------------------------------------------------------
         if (n.isLeaf) {                                                      // handle leaf node level
-            if (n.nKeys < MAX) {                                             // current node is not full
-                wedge (key, ref, n, n.find (key), true);                     // wedge (key, ref) pair at find position
+            var i = n.find (key);                                            // find "<=" position
+            if (i < n.nKeys && key.compareTo (n.key[i]) == 0) {              // existing key: replace its value
+                oldValue = (V) n.ref[i];
+                n.ref[i] = ref;
+            } else if (n.nKeys < max) {                                      // current node is not full
+                wedge (key, ref, n, i, true);                                // wedge (key, ref) pair at find position
             } else {
                 r = split (n);                                               // split current node, return right sibling
-                out.println(r+"----");
-                n.ref[n.nKeys] = r;                                           // link leaf n to leaf r
-                if (n == root) root = makeRoot (n, n.key[n.nKeys-1], r);     // at root => make a new root
-                else if(r != null) hasSplit = true;//Possibility of a internal split to occur
-                if (key.compareTo (n.key [MID]) < 0)
-                    wedge(key, ref, n, n.find(key), true);                 // wedge (key, ref) pair into node n
+                n.ref[n.nKeys] = r;                                          // link leaf n to leaf r
+                if (key.compareTo (n.key[n.nKeys-1]) <= 0)
+                    wedge (key, ref, n, n.find (key), true);                 // wedge (key, ref) pair into node n
                 else
-                    wedge(key, ref, r, r.find(key), true);                 // wedge (key, ref) pair into node r
+                    wedge (key, ref, r, r.find (key), true);                 // wedge (key, ref) pair into node r
+                divKey = n.key[n.nKeys-1];                                   // divider key - largest left
+                if (n == root) root = makeRoot (n, divKey, r);               // at root => make a new root
+                else           hasSplit = true;                              // else insert divider one level up
             } // if
 //---------------------------------------------------------------------------
         } else {                                                             // handle internal node level
-            out.println("else");
-            var i = n.find (key);                                            // find "<=" position
-            out.println("after find---" + i);
-            r = insert (key, ref, (Node) n.ref[i]);                          // recursive call to insert
-            out.println(r+"===");
+            var i  = n.find (key);                                           // find "<=" position
+            var rc = insert (key, ref, child (n, i));                        // recursive call to insert
             if (DEBUG) out.println ("insert: handle internal node level");
 
-            //  T O   B E   I M P L E M E N T E D
-            if(hasSplit){
-                var leftNode = (Node)n.ref[i];
-                var midKey = (K)leftNode.key[MID-1];
-                var key1 = (K)leftNode.key[leftNode.nKeys-1];
-                if(leftNode == null) return null;
-                if(n.nKeys<MAX) {
-                    if(n.nKeys<MID-1) wedge(key1,r,(Node)n,n.find(key1),false);
-                    else wedge(midKey,r,(Node)n,n.find(midKey),false);
-                    hasSplit=false;
-                }
-                else {
-                    Node duplicateN = new Node(n.isLeaf);
-                    duplicateN.copy(n,0,MAX);
-                    var rt=splitI(n);
-                    if(n==root) {
-                        hasSplit=false;
-                        root=makeRoot(n,n.key[n.nKeys],rt);
-                    }
-                    else if(r!=null) hasSplit=true;
-                    if (key.compareTo (n.key [MID]) < 0) {
-                        if (n.nKeys < MID - 1) wedge(key1, r, n, n.find(key1), false);
-                        else wedge(midKey, r, n, n.find(midKey), false);       // wedge (key, ref) pair into node n
-                    }
-                    else {
-                        if(n.nKeys<MID-1) wedge(key1, r, rt, rt.find(key1), false);
-                        else wedge(midKey, r, rt, rt.find(midKey), false);    // wedge (key, ref) pair into node rt
-                    }
-                }
-            }
+            if (hasSplit) {                                                  // child i split into (child i, rc)
+                if (n.nKeys < max) {
+                    wedge (divKey, rc, n, i, false);                         // wedge (divKey, rc) pair into node n
+                    hasSplit = false;
+                } else {
+                    var k = divKey;
+                    r = splitI (n);                                          // split current node, sets divKey
+                    if (i <= n.nKeys) wedge (k, rc, n, i, false);            // wedge (k, rc) pair into node n
+                    else              wedge (k, rc, r, i - n.nKeys - 1, false); // wedge (k, rc) pair into node r
+                    if (n == root) {
+                        root     = makeRoot (n, divKey, r);                  // at root => make a new root
+                        hasSplit = false;
+                    } // if
+                } // if
+            } // if
         } // if
 //---------------------------------------------------------------------------
         if (DEBUG) print (root, 0);
@@ -485,14 +1178,15 @@ public class BpTreeMap <K extends Comparable <K>, V>
     private Node split (Node n)
     {
         var r = new Node (true);                                      // make a right sibling node (r)
-        r.copy (n, MID, MAX-MID);                                     // copy second half to node r
-        n.nKeys = MID;                                                // reset the number of keys in node n
+        r.copy (n, mid, max-mid);                                     // copy second half to node r
+        n.nKeys = mid;                                                // reset the number of keys in node n
         return r;                                                     // return right sibling
     } // splt
 
     /********************************************************************************
      * Split internal node n and return the newly created right sibling node r.  The
-     * bigger half stays in current node n, with the remaining lesser half going into r.
+     * keys before the middle key stay in current node n, the keys after it go into r,
+     * and the middle key itself is recorded in divKey to be inserted one level up.
      * @param n  the current internal node
      * @return  the new right sibling internal node r
      */
@@ -500,18 +1194,196 @@ public class BpTreeMap <K extends Comparable <K>, V>
     {
         var r = new Node (false);                                     // make a right sibling node (r)
 
-        //  T O   B E   I M P L E M E N T E D
-        r.copy (n, MID, MAX-MID);                                     // copy second half to node r
-        n.nKeys = MID-1;                                              // reset the number of keys in node n
+        r.copy (n, mid + 1, max-mid-1);                               // copy keys after the middle one to node r
+        divKey  = n.key[mid];                                         // middle key moves up as the divider
+        n.nKeys = mid;                                                // reset the number of keys in node n
         return r;
     } // spltI
 
+    /********************************************************************************
+     * Recursive helper function for deleting a key from a B+tree.  After deleting from
+     * child i of internal node n, the child is rebalanced if it has underflowed.
+     * Divider keys need not change on a plain delete, since a divider remains at least
+     * the largest key on its left and less than the smallest key on its right.
+     * @param key  the key to delete
+     * @param n    the current node
+     * @return  the value that was associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    private V delete (K key, Node n)
+    {
+        var i = n.find (key);                                                // find "<=" position
+        if (n.isLeaf) {
+            if (i == n.nKeys || key.compareTo (n.key[i]) != 0) return null;  // key not in the tree
+            var v = (V) n.ref[i];
+            for (var j = i; j < n.nKeys; j++) {                              // close the gap: shift left
+                n.key[j] = (j + 1 < n.nKeys) ? n.key[j+1] : null;
+                n.ref[j] = n.ref[j+1];                                       // includes the next-leaf link
+            } // for
+            n.ref[n.nKeys--] = null;
+            return v;
+        } // if
+
+        var c = child (n, i);
+        var v = delete (key, c);
+        if (v != null && c.nKeys < minKeys ()) rebalance (n, i);
+        return v;
+    } // delete
+
+    /********************************************************************************
+     * Return the minimum number of keys for a node other than the root, chosen so that
+     * an underflowed node and a sibling at the minimum always fit in one node.
+     * @return  the minimum number of keys
+     */
+    private int minKeys ()
+    {
+        return max / 2;
+    } // minKeys
+
+    /********************************************************************************
+     * Rebalance child i of internal node p after it has underflowed, by borrowing a key
+     * from its left or right sibling if one has a key to spare, or else merging it
+     * with a sibling.
+     * @param p  the parent node
+     * @param i  the position of the underflowed child
+     */
+    private void rebalance (Node p, int i)
+    {
+        var left  = (i > 0)       ? child (p, i - 1) : null;
+        var right = (i < p.nKeys) ? child (p, i + 1) : null;
+        if      (left  != null && left.nKeys  > minKeys ()) borrowLeft (p, i);
+        else if (right != null && right.nKeys > minKeys ()) borrowRight (p, i);
+        else if (left  != null)                              merge (p, i - 1);
+        else if (right != null)                              merge (p, i);
+    } // rebalance
+
+    /********************************************************************************
+     * Move the last key of child i-1 of p to the front of child i, updating the divider
+     * key between them.  For internal nodes, the key rotates through the parent.
+     * @param p  the parent node
+     * @param i  the position of the child borrowing the key
+     */
+    private void borrowLeft (Node p, int i)
+    {
+        var l = child (p, i - 1);
+        var c = child (p, i);
+        c.ref[c.nKeys + 1] = c.ref[c.nKeys];                                 // make room: shift right
+        for (var j = c.nKeys; j > 0; j--) { c.key[j] = c.key[j-1]; c.ref[j] = c.ref[j-1]; }
+        if (c.isLeaf) {
+            c.key[0] = l.key[l.nKeys-1];
+            c.ref[0] = l.ref[l.nKeys-1];
+            l.ref[l.nKeys-1] = l.ref[l.nKeys];                               // keep the next-leaf link
+            p.key[i-1] = l.key[l.nKeys-2];                                   // divider - new largest left
+        } else {
+            c.key[0] = p.key[i-1];                                           // divider comes down
+            c.ref[0] = l.ref[l.nKeys];
+            p.key[i-1] = l.key[l.nKeys-1];                                   // largest left goes up
+        } // if
+        l.ref[l.nKeys] = null;
+        l.key[--l.nKeys] = null;
+        c.nKeys++;
+    } // borrowLeft
+
+    /********************************************************************************
+     * Move the first key of child i+1 of p to the end of child i, updating the divider
+     * key between them.  For internal nodes, the key rotates through the parent.
+     * @param p  the parent node
+     * @param i  the position of the child borrowing the key
+     */
+    private void borrowRight (Node p, int i)
+    {
+        var c = child (p, i);
+        var r = child (p, i + 1);
+        if (c.isLeaf) {
+            c.ref[c.nKeys + 1] = c.ref[c.nKeys];                             // keep the next-leaf link
+            c.key[c.nKeys] = r.key[0];
+            c.ref[c.nKeys] = r.ref[0];
+            p.key[i] = r.key[0];                                             // divider - new largest left
+        } else {
+            c.key[c.nKeys]     = p.key[i];                                   // divider comes down
+            c.ref[c.nKeys + 1] = r.ref[0];
+            p.key[i] = r.key[0];                                             // smallest right goes up
+        } // if
+        c.nKeys++;
+        for (var j = 0; j < r.nKeys; j++) {                                  // close the gap: shift left
+            r.key[j] = (j + 1 < r.nKeys) ? r.key[j+1] : null;
+            r.ref[j] = r.ref[j+1];
+        } // for
+        r.ref[r.nKeys--] = null;
+    } // borrowRight
+
+    /********************************************************************************
+     * Merge child i+1 of p into child i, removing divider key i and the reference to
+     * child i+1 from p.  For internal nodes, the divider comes down between the merged
+     * keys; for leaves, the merged leaf takes over the right leaf's next-leaf link.
+     * @param p  the parent node
+     * @param i  the position of the left child
+     */
+    private void merge (Node p, int i)
+    {
+        var l = child (p, i);
+        var r = child (p, i + 1);
+        if (! l.isLeaf) l.key[l.nKeys++] = p.key[i];                         // divider comes down
+        for (var j = 0; j < r.nKeys; j++) { l.key[l.nKeys + j] = r.key[j]; l.ref[l.nKeys + j] = r.ref[j]; }
+        l.nKeys += r.nKeys;
+        l.ref[l.nKeys] = r.ref[r.nKeys];                                     // last child or next-leaf link
+
+        for (var j = i; j < p.nKeys; j++) {                                  // remove divider i and child i+1
+            p.key[j]   = (j + 1 < p.nKeys) ? p.key[j+1] : null;
+            p.ref[j+1] = (j + 2 <= p.nKeys) ? p.ref[j+2] : null;
+        } // for
+        p.nKeys--;
+    } // merge
+
+    /********************************************************************************
+     * Benchmark B+Trees of the given orders: for each order, insert the keys 0 until
+     * totalKeys in random order, then look each of them up in a different random order,
+     * and print the insert and lookup throughput, the height of the tree and the
+     * average number of nodes accessed per lookup.
+     * @param totalKeys  the number of keys
+     * @param orders     the orders (maximum fanouts) to compare
+     */
+    public static void benchmark (int totalKeys, int ... orders)
+    {
+        var rng  = new Random (1);
+        var keys = new Integer [totalKeys];
+        for (var i = 0; i < totalKeys; i++) keys[i] = i;
+
+        out.println ("   order  height  inserts/ms  lookups/ms  nodes/lookup");
+        for (var ord : orders) {
+            var bpt = new BpTreeMap <Integer, Integer> (Integer.class, Integer.class, ord);
+            Collections.shuffle (Arrays.asList (keys), rng);
+            var t0 = System.nanoTime ();
+            for (var k : keys) bpt.put (k, k);
+            var t1 = System.nanoTime ();
+
+            Collections.shuffle (Arrays.asList (keys), rng);
+            bpt.nodesAccessed ();
+            var t2 = System.nanoTime ();
+            for (var k : keys) if (bpt.get (k) == null) throw new IllegalStateException ("lost key " + k);
+            var t3 = System.nanoTime ();
+            var nodes = bpt.nodesAccessed ();
+
+            var height = 1;
+            for (var n = bpt.load (bpt.root); ! n.isLeaf; n = bpt.child (n, 0)) height++;
+            out.printf ("%8d %7d %11.0f %11.0f %13.2f%n", ord, height, totalKeys / ((t1 - t0) / 1E6),
+                        totalKeys / ((t3 - t2) / 1E6), nodes / (double) totalKeys);
+        } // for
+    } // benchmark
+
     /********************************************************************************
      * The main method used for testing.  Also test for more keys and with RANDOMLY true.
+     * With "-bench" as args[0], instead benchmark trees of several orders (args[1] gives
+     * the number of keys, default 50,000).
      * @param  //the command-line arguments (args[0] gives number of keys to insert)
      */
     public static void main (String [] args)
     {
+        if (args.length > 0 && args[0].equals ("-bench")) {
+            benchmark ((args.length > 1) ? Integer.valueOf (args[1]) : 50_000, 5, 16, 64, 128, 256);
+            return;
+        } // if
+
         var totalKeys = 30;
         var RANDOMLY  = true;
         var bpt       = new BpTreeMap <Integer, Integer> (Integer.class, Integer.class);
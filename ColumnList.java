@@ -0,0 +1,240 @@
+package AppSlash.Code;
+/****************************************************************************************
+ * @file  ColumnList.java
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/****************************************************************************************
+ * The ColumnList class stores tuples column by column in primitive arrays, while still
+ * presenting them as a List of tuples so that all the Table operators work unchanged.
+ * Integer, Short, Byte and Character columns are stored in int [], Long columns in
+ * long [], Double and Float columns in double [], and String columns as int [] codes into
+ * a Dictionary of the distinct strings (which may be shared with other columns).  Columns
+ * of any other domain are kept in Comparable [].  Tuples are materialized on get.
+ */
+public class ColumnList
+        extends AbstractList <Comparable []>
+        implements Serializable, RandomAccess
+{
+    /** The initial capacity (in rows) of each column.
+     */
+    private static final int INIT_CAP = 16;
+
+    /** Array of attribute domains (one column per domain).
+     */
+    private final Class [] domain;
+
+    /** The column arrays (int [], long [], double [] or Comparable []).
+     */
+    private final Object [] column;
+
+    /** The dictionaries for String columns (null for other columns).
+     */
+    private final Dictionary [] dict;
+
+    /** The number of rows stored.
+     */
+    private int size = 0;
+
+    /** The capacity (in rows) of the columns.
+     */
+    private int cap = INIT_CAP;
+
+    /************************************************************************************
+     * Construct an empty column list for tuples with the given domains.
+     *
+     * @param _domain  the attribute domains
+     */
+    public ColumnList (Class [] _domain)
+    {
+        domain = _domain;
+        column = new Object [domain.length];
+        dict   = new Dictionary [domain.length];
+        for (var j = 0; j < domain.length; j++) {
+            var dom = domain [j];
+            if (dom == Long.class)                                 column [j] = new long [cap];
+            else if (dom == Double.class || dom == Float.class)    column [j] = new double [cap];
+            else if (dom == Integer.class || dom == Short.class || dom == Byte.class ||
+                     dom == Character.class || dom == String.class) column [j] = new int [cap];
+            else                                                   column [j] = new Comparable [cap];
+            if (dom == String.class) dict [j] = new Dictionary ();
+        } // for
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of rows stored.
+     *
+     * @return  the number of rows
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Return the i-th row as a newly materialized tuple.
+     *
+     * @param i  the row number
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        Objects.checkIndex (i, size);
+        var t = new Comparable [domain.length];
+        for (var j = 0; j < t.length; j++) t [j] = value (j, i);
+        return t;
+    } // get
+
+    /************************************************************************************
+     * Replace the i-th row.
+     *
+     * @param i  the row number
+     * @param t  the new tuple
+     * @return  the previous tuple
+     */
+    public Comparable [] set (int i, Comparable [] t)
+    {
+        var old = get (i);
+        store (i, t);
+        return old;
+    } // set
+
+    /************************************************************************************
+     * Insert a row.  Only appending (i == size) is supported.
+     *
+     * @param i  the row number (must equal size)
+     * @param t  the tuple to append
+     */
+    public void add (int i, Comparable [] t)
+    {
+        if (i != size) throw new UnsupportedOperationException ("ColumnList only supports appending");
+        if (size == cap) grow ();
+        store (size++, t);
+        modCount++;
+    } // add
+
+    /************************************************************************************
+     * Remove all rows (keeping the dictionaries).
+     */
+    public void clear ()
+    {
+        size = 0;
+        modCount++;
+    } // clear
+
+    /************************************************************************************
+     * Return the domain of the columns.
+     *
+     * @return  the attribute domains
+     */
+    Class [] domain ()
+    {
+        return domain;
+    } // domain
+
+    /************************************************************************************
+     * Return the raw array for column j (int [], long [], double [] or Comparable []).
+     * Only the first size entries are valid.  String columns hold dictionary codes.
+     *
+     * @param j  the column number
+     * @return  the column array
+     */
+    Object column (int j)
+    {
+        return column [j];
+    } // column
+
+    /************************************************************************************
+     * Return the dictionary of String column j, or null if column j is not a String
+     * column.
+     *
+     * @param j  the column number
+     * @return  the dictionary
+     */
+    Dictionary dictionary (int j)
+    {
+        return dict [j];
+    } // dictionary
+
+    /************************************************************************************
+     * Make String column j use dictionary d (e.g., the dictionary of a column of another
+     * table), re-encoding the rows already stored.
+     *
+     * @param j  the column number
+     * @param d  the dictionary to share
+     */
+    void shareDictionary (int j, Dictionary d)
+    {
+        if (dict [j] == null) throw new IllegalArgumentException ("column " + j + " is not a String column");
+        if (dict [j] == d) return;
+        var old    = dict [j];
+        var recode = new int [old.size ()];
+        for (var c = 0; c < recode.length; c++) recode [c] = d.encode (old.decode (c));
+        var codes  = (int []) column [j];
+        for (var i = 0; i < size; i++) codes [i] = recode [codes [i]];
+        dict [j] = d;
+    } // shareDictionary
+
+    /************************************************************************************
+     * Return the value in row i of column j as an object of the column's domain.
+     *
+     * @param j  the column number
+     * @param i  the row number
+     * @return  the value
+     */
+    Comparable value (int j, int i)
+    {
+        var dom = domain [j];
+        var c   = column [j];
+        if (c instanceof long [])   return ((long []) c) [i];
+        if (c instanceof Comparable []) return ((Comparable []) c) [i];
+        if (c instanceof double []) {
+            var v = ((double []) c) [i];
+            return (dom == Float.class) ? (Comparable) (float) v : (Comparable) v;
+        } // if
+        var v = ((int []) c) [i];
+        if (dom == String.class)    return dict [j].decode (v);
+        if (dom == Short.class)     return (short) v;
+        if (dom == Byte.class)      return (byte) v;
+        if (dom == Character.class) return (char) v;
+        return v;
+    } // value
+
+    /************************************************************************************
+     * Store tuple t in row i of the columns.
+     *
+     * @param i  the row number
+     * @param t  the tuple
+     */
+    private void store (int i, Comparable [] t)
+    {
+        for (var j = 0; j < domain.length; j++) {
+            var c = column [j];
+            var v = t [j];
+            if      (c instanceof long [])   ((long []) c) [i]   = ((Number) v).longValue ();
+            else if (c instanceof double []) ((double []) c) [i] = ((Number) v).doubleValue ();
+            else if (c instanceof Comparable []) ((Comparable []) c) [i] = v;
+            else if (dict [j] != null)       ((int []) c) [i]    = dict [j].encode ((String) v);
+            else if (v instanceof Character) ((int []) c) [i]    = (Character) v;
+            else                             ((int []) c) [i]    = ((Number) v).intValue ();
+        } // for
+    } // store
+
+    /************************************************************************************
+     * Double the capacity of every column.
+     */
+    private void grow ()
+    {
+        cap *= 2;
+        for (var j = 0; j < column.length; j++) {
+            var c = column [j];
+            if      (c instanceof long [])   column [j] = Arrays.copyOf ((long []) c, cap);
+            else if (c instanceof double []) column [j] = Arrays.copyOf ((double []) c, cap);
+            else if (c instanceof int [])    column [j] = Arrays.copyOf ((int []) c, cap);
+            else                             column [j] = Arrays.copyOf ((Comparable []) c, cap);
+        } // for
+    } // grow
+
+} // ColumnList class
@@ -0,0 +1,354 @@
+package AppSlash.Code;
+/************************************************************************************
+ * @file ConcurrentLinHashMap.java
+ */
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides thread-safe hash maps that use the Linear Hashing algorithm.
+ * The split pointer, the moduli and the table of bucket chains form one immutable
+ * state that is replaced as a whole, and the entries of each chain are an immutable
+ * array replaced by writers, so get takes no locks: it reads a state, searches the
+ * key's chain, and only on a miss rechecks that the state has not changed meanwhile.
+ * Writers lock only the key's home chain.  A split, triggered when the load factor
+ * exceeds THRESHOLD, moves one chain at a time under that chain's lock (and a split
+ * lock so that splits are taken in order), publishing the new chain and state before
+ * removing the moved keys from the old chain.
+ * Keys and values may not be null.
+ */
+public class ConcurrentLinHashMap <K, V>
+        extends AbstractMap <K, V>
+{
+    /** The number of slots (for key-value pairs) per bucket, used to size the table.
+     */
+    private static final int SLOTS = 4;
+
+    /** The threshold/upper bound on the load factor
+     */
+    private static final double THRESHOLD = 1.2;
+
+    /** An empty chain.
+     */
+    private static final Object [] EMPTY = new Object [0];
+
+    /********************************************************************************
+     * This inner class defines bucket chains: the keys and values alternate in an
+     * array that is never modified once published.
+     */
+    private static final class Chain
+    {
+        final ReentrantLock latch = new ReentrantLock ();             // held by writers only
+        volatile Object []  kv    = EMPTY;                            // key0, value0, key1, value1, ...
+
+        /****************************************************************************
+         * Return the position of the key in the entries, or -1 if it is absent.
+         * @param e  the entries
+         * @param k  the key
+         */
+        static int indexOf (Object [] e, Object k)
+        {
+            for (var j = 0; j < e.length; j += 2) if (e[j].equals (k)) return j;
+            return -1;
+        } // indexOf
+
+    } // Chain inner class
+
+    /********************************************************************************
+     * This inner class holds the split state: the low resolution modulus, the index of
+     * the next chain to split and the table of chains (which may have spare capacity
+     * beyond the mod1 + isplit chains in use).
+     */
+    private static final class State
+    {
+        final int      mod1;
+        final int      isplit;
+        final Chain [] table;
+
+        State (int _mod1, int _isplit, Chain [] _table)
+        {
+            mod1   = _mod1;
+            isplit = _isplit;
+            table  = _table;
+        } // constructor
+
+        /****************************************************************************
+         * Return the home chain for the key, using the high resolution hash function
+         * for chains that have already been split in the current phase.
+         * @param key  the key to hash
+         */
+        int home (Object key)
+        {
+            var i = Math.floorMod (key.hashCode (), mod1);
+            return (i < isplit) ? Math.floorMod (key.hashCode (), 2 * mod1) : i;
+        } // home
+
+        /****************************************************************************
+         * Return the number of chains in use.
+         */
+        int chains ()
+        {
+            return mod1 + isplit;
+        } // chains
+
+    } // State inner class
+
+    /** The current split state.
+     */
+    private volatile State state;
+
+    /** The lock taken (by one writer at a time) to split the next chain.
+     */
+    private final ReentrantLock splitLatch = new ReentrantLock ();
+
+    /** The counter for the total number of keys in the map.
+     */
+    private final AtomicInteger keyCount = new AtomicInteger ();
+
+    /********************************************************************************
+     * Construct a thread-safe hash table that uses Linear Hashing.
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     */
+    public ConcurrentLinHashMap (Class <K> _classK, Class <V> _classV)
+    {
+        var table = new Chain [8];
+        for (var i = 0; i < 4; i++) table[i] = new Chain ();
+        state = new State (4, 0, table);                              // initial size
+    } // constructor
+
+    /********************************************************************************
+     * Given the key, look up the value without taking any locks.  A miss is only
+     * trusted if no split was published while searching, since a split may have moved
+     * the key to a new chain.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        while (true) {
+            var s = state;
+            var e = s.table[s.home (key)].kv;
+            var j = Chain.indexOf (e, key);
+            if (j >= 0)      return (V) e[j + 1];
+            if (s == state)  return null;
+        } // while
+    } // get
+
+    /********************************************************************************
+     * Return whether the map contains the key.
+     * @param key  the key to look for
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the hash table, locking only the key's home chain.
+     * Split the next chain when the load factor is exceeded.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the old/previous value, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V put (K key, V value)
+    {
+        if (key == null || value == null) throw new NullPointerException ("ConcurrentLinHashMap: null key or value");
+
+        var c = lockHome (key);
+        try {
+            var e = c.kv;
+            var j = Chain.indexOf (e, key);
+            if (j >= 0) {                                             // replace the value of an old key
+                var old = (V) e[j + 1];
+                e = e.clone ();
+                e[j + 1] = value;
+                c.kv = e;
+                return old;
+            } // if
+            e = Arrays.copyOf (e, e.length + 2);
+            e[e.length - 2] = key;
+            e[e.length - 1] = value;
+            c.kv = e;
+        } finally {
+            c.latch.unlock ();
+        } // try
+
+        if (keyCount.incrementAndGet () > THRESHOLD * SLOTS * state.chains ()) split ();
+        return null;
+    } // put
+
+    /********************************************************************************
+     * Remove the key from the hash table, locking only the key's home chain.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        var c = lockHome (key);
+        try {
+            var e = c.kv;
+            var j = Chain.indexOf (e, key);
+            if (j < 0) return null;
+            var f = new Object [e.length - 2];
+            System.arraycopy (e, 0, f, 0, j);
+            System.arraycopy (e, j + 2, f, j, e.length - j - 2);
+            c.kv = f;
+            keyCount.decrementAndGet ();
+            return (V) e[j + 1];
+        } finally {
+            c.latch.unlock ();
+        } // try
+    } // remove
+
+    /********************************************************************************
+     * Lock and return the home chain of the key.  Once the chain is locked it cannot
+     * be split, so the home is rechecked against the current state and the lookup
+     * retried if the chain was split in the meantime.
+     * @param key  the key
+     * @return  the locked home chain
+     */
+    private Chain lockHome (Object key)
+    {
+        while (true) {
+            var s = state;
+            var i = s.home (key);
+            var c = s.table[i];
+            c.latch.lock ();
+            s = state;
+            if (i < s.chains () && s.table[i] == c && s.home (key) == i) return c;
+            c.latch.unlock ();
+        } // while
+    } // lockHome
+
+    /********************************************************************************
+     * Split chains while the load factor exceeds THRESHOLD.  If another writer is
+     * already splitting, this one does not wait: that writer keeps splitting until
+     * the load factor is back under THRESHOLD.
+     */
+    private void split ()
+    {
+        if (! splitLatch.tryLock ()) return;
+        try {
+            while (keyCount.get () > THRESHOLD * SLOTS * state.chains ()) splitNext ();
+        } finally {
+            splitLatch.unlock ();
+        } // try
+    } // split
+
+    /********************************************************************************
+     * Split chain 'isplit' by creating a new chain at the end of the table holding the
+     * keys that the high resolution hash function moves to it.  The new chain and the
+     * advanced state are published before the moved keys are removed from the old
+     * chain, so concurrent lookups always find them.  Called holding splitLatch.
+     */
+    private void splitNext ()
+    {
+        var s = state;
+        var c = s.table[s.isplit];
+        c.latch.lock ();
+        try {
+            var e    = c.kv;
+            var mod2 = 2 * s.mod1;
+            var stay = new ArrayList <Object> (e.length);
+            var move = new ArrayList <Object> (e.length);
+            for (var j = 0; j < e.length; j += 2) {
+                var to = (Math.floorMod (e[j].hashCode (), mod2) == s.isplit) ? stay : move;
+                to.add (e[j]);
+                to.add (e[j + 1]);
+            } // for
+
+            var n = new Chain ();
+            n.kv = move.toArray ();
+            var table = s.table;
+            if (s.chains () == table.length) table = Arrays.copyOf (table, 2 * table.length);
+            table[s.chains ()] = n;                                   // slot unused by current readers
+            state = (s.isplit + 1 == s.mod1) ? new State (mod2, 0, table)          // phase complete
+                                             : new State (s.mod1, s.isplit + 1, table);
+            c.kv = stay.toArray ();
+        } finally {
+            c.latch.unlock ();
+        } // try
+    } // splitNext
+
+    /********************************************************************************
+     * Return the number of keys stored in the hash table.
+     * @return  the number of keys
+     */
+    public int size ()
+    {
+        return keyCount.get ();
+    } // size
+
+    /********************************************************************************
+     * Return a set containing all the entries as pairs of keys and values, taken from
+     * the chains of one state (weakly consistent under concurrent updates).
+     * @return  the set view of the map
+     */
+    @SuppressWarnings("unchecked")
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        var s   = state;
+        var map = new HashMap <K, V> ();
+        for (var i = 0; i < s.chains (); i++) {
+            var e = s.table[i].kv;
+            for (var j = 0; j < e.length; j += 2) map.putIfAbsent ((K) e[j], (V) e[j + 1]);
+        } // for
+        return map.entrySet ();
+    } // entrySet
+
+    /********************************************************************************
+     * The main method used for testing: several writer threads insert disjoint sets of
+     * keys while reader threads look up keys already inserted, then every key is checked.
+     * @param args  the command-line arguments (args[0] gives number of keys per writer)
+     */
+    public static void main (String [] args)
+            throws InterruptedException
+    {
+        var perWriter = (args.length > 0) ? Integer.valueOf (args[0]) : 100_000;
+        var writers   = 4;
+        var ht        = new ConcurrentLinHashMap <Integer, Integer> (Integer.class, Integer.class);
+        var progress  = new AtomicInteger [writers];
+        var threads   = new ArrayList <Thread> ();
+
+        for (var w = 0; w < writers; w++) {
+            var id = w;
+            progress[id] = new AtomicInteger ();
+            threads.add (new Thread (() -> {
+                for (var j = 0; j < perWriter; j++) {
+                    ht.put (j * writers + id, j);
+                    progress[id].set (j + 1);
+                } // for
+            }));
+            threads.add (new Thread (() -> {                          // reader trailing writer id
+                var rng = new Random ();
+                for (var j = 0; j < perWriter; j++) {
+                    var done = progress[id].get ();
+                    if (done == 0) continue;
+                    var k = rng.nextInt (done);
+                    if (! Integer.valueOf (k).equals (ht.get (k * writers + id))) {
+                        throw new IllegalStateException ("missed key " + (k * writers + id));
+                    } // if
+                } // for
+            }));
+        } // for
+        var t0 = System.nanoTime ();
+        for (var t : threads) t.start ();
+        for (var t : threads) t.join ();
+        var t1 = System.nanoTime ();
+
+        for (var k = 0; k < perWriter * writers; k++) {
+            if (! Integer.valueOf (k / writers).equals (ht.get (k))) throw new IllegalStateException ("lost key " + k);
+        } // for
+        out.println ("keys = " + ht.size () + ", chains = " + ht.state.chains () +
+                     ", time = " + (t1 - t0) / 1E6 + " ms");
+    } // main
+
+} // ConcurrentLinHashMap class
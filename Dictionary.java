@@ -0,0 +1,76 @@
+package AppSlash.Code;
+/****************************************************************************************
+ * @file  Dictionary.java
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/****************************************************************************************
+ * The Dictionary class encodes strings as dense int codes (0, 1, 2, ...) in order of first
+ * appearance.  Dictionary-encoded columns store only the codes, so equal strings are
+ * stored once and equality tests become int comparisons.  Columns (possibly of different
+ * tables) sharing one dictionary may compare or join their codes directly.
+ */
+public class Dictionary
+        implements Serializable
+{
+    /** The strings by code.
+     */
+    private final List <String> values = new ArrayList <> ();
+
+    /** The codes by string.
+     */
+    private final Map <String, Integer> codes = new HashMap <> ();
+
+    /************************************************************************************
+     * Return the code for string s, adding s to the dictionary if it is new.
+     *
+     * @param s  the string to encode
+     * @return  its code
+     */
+    public int encode (String s)
+    {
+        var c = codes.get (s);
+        if (c == null) {
+            c = values.size ();
+            values.add (s);
+            codes.put (s, c);
+        } // if
+        return c;
+    } // encode
+
+    /************************************************************************************
+     * Return the code for string s without adding it.
+     *
+     * @param s  the string to look up
+     * @return  its code, or -1 if s is not in the dictionary
+     */
+    public int lookup (String s)
+    {
+        var c = codes.get (s);
+        return (c == null) ? -1 : c;
+    } // lookup
+
+    /************************************************************************************
+     * Return the string for code c.
+     *
+     * @param c  the code to decode
+     * @return  the string
+     */
+    public String decode (int c)
+    {
+        return values.get (c);
+    } // decode
+
+    /************************************************************************************
+     * Return the number of distinct strings (one more than the largest code).
+     *
+     * @return  the size of the dictionary
+     */
+    public int size ()
+    {
+        return values.size ();
+    } // size
+
+} // Dictionary class
@@ -0,0 +1,525 @@
+package AppSlash.Code;
+/****************************************************************************************
+ * @file  FileList.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/****************************************************************************************
+ * The FileList class stores tuples on disk as fixed-size records in a RandomAccessFile,
+ * while still presenting them as a List of tuples so that all the Table operators work
+ * unchanged.  The record length is derived from the attribute domains: Integer 4, Long 8,
+ * Short 2, Byte 1, Double 8, Float 4, Character 2 and String 2 + strBytes bytes (a length
+ * followed by the UTF-8 bytes).  Records are grouped into pages that are cached in an
+ * LRU buffer pool of a configurable number of pages, so tables larger than the heap can
+ * be scanned with bounded memory.  Dirty pages are written back when evicted or flushed.
+ * The buffer pool and the file position are shared, so access is synchronized on the
+ * list: several threads may read it at once (e.g., the partitioning threads of ph_join).
+ */
+public class FileList
+        extends AbstractList <Comparable []>
+        implements Serializable, RandomAccess
+{
+    /** The target size (in bytes) of a page.
+     */
+    private static final int PAGE_SIZE = 4096;
+
+    /** The default maximum number of bytes in a String field.
+     */
+    static final int STR_BYTES = 64;
+
+    /** The default number of pages in a buffer pool.
+     */
+    private static int poolSize = 64;
+
+    /** The path of the file holding the records.
+     */
+    private final String path;
+
+    /** Array of attribute domains (one field per domain).
+     */
+    private final Class [] domain;
+
+    /** The byte offsets of the fields within a record.
+     */
+    private final int [] offset;
+
+    /** The maximum number of bytes in a String field.
+     */
+    private final int strBytes;
+
+    /** The length (in bytes) of a record.
+     */
+    private final int recLen;
+
+    /** The number of records per page.
+     */
+    private final int perPage;
+
+    /** The maximum number of pages kept in the buffer pool.
+     */
+    private final int poolPages;
+
+    /** The number of records stored.
+     */
+    private int size = 0;
+
+    /** The open file (reopened on demand after deserialization).
+     */
+    private transient RandomAccessFile file;
+
+    /** The buffer pool: page number -> page, in least recently used order.
+     */
+    private transient LinkedHashMap <Integer, Page> pool;
+
+    /** Counters for the number of page reads and writes (for performance testing).
+     */
+    private transient int reads, writes;
+
+    /************************************************************************************
+     * This inner class holds a page of records in memory.
+     */
+    private static class Page
+    {
+        final int        no;
+        final ByteBuffer buf;
+        boolean          dirty;
+
+        Page (int _no, int bytes)
+        {
+            no  = _no;
+            buf = ByteBuffer.allocate (bytes);
+        } // constructor
+
+    } // Page class
+
+    /************************************************************************************
+     * Set the default number of pages in the buffer pool of newly created file lists.
+     *
+     * @param pages  the number of pages
+     */
+    public static void setPoolSize (int pages)
+    {
+        if (pages < 1) throw new IllegalArgumentException ("pool size must be positive");
+        poolSize = pages;
+    } // setPoolSize
+
+    /************************************************************************************
+     * Construct an empty file list for tuples with the given domains, stored in the file
+     * with the given path (truncating any existing file).
+     *
+     * @param _path    the path of the file
+     * @param _domain  the attribute domains
+     */
+    public FileList (String _path, Class [] _domain)
+    {
+        this (_path, _domain, STR_BYTES, poolSize);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty file list for tuples with the given domains and String field
+     * size, stored in the file with the given path (truncating any existing file).
+     *
+     * @param _path      the path of the file
+     * @param _domain    the attribute domains
+     * @param _strBytes  the maximum number of bytes in a String field
+     */
+    public FileList (String _path, Class [] _domain, int _strBytes)
+    {
+        this (_path, _domain, _strBytes, poolSize);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty file list for tuples with the given domains, stored in the file
+     * with the given path (truncating any existing file).
+     *
+     * @param _path       the path of the file
+     * @param _domain     the attribute domains
+     * @param _strBytes   the maximum number of bytes in a String field
+     * @param _poolPages  the number of pages in the buffer pool
+     */
+    public FileList (String _path, Class [] _domain, int _strBytes, int _poolPages)
+    {
+        this (_path, _domain, _strBytes, _poolPages, true);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a file list over the file with the given path, either truncating it or
+     * adopting the records already in it.
+     *
+     * @param _path       the path of the file
+     * @param _domain     the attribute domains
+     * @param _strBytes   the maximum number of bytes in a String field
+     * @param _poolPages  the number of pages in the buffer pool
+     * @param truncate    whether to empty the file
+     */
+    private FileList (String _path, Class [] _domain, int _strBytes, int _poolPages, boolean truncate)
+    {
+        path      = _path;
+        domain    = _domain;
+        strBytes  = _strBytes;
+        poolPages = _poolPages;
+        offset    = new int [domain.length];
+        recLen    = layout (domain, strBytes, offset);
+        perPage   = Math.max (PAGE_SIZE / recLen, 1);
+        try {
+            new File (path).getAbsoluteFile ().getParentFile ().mkdirs ();
+            if (truncate) file ().setLength (0);
+            else          size = (int) (file ().length () / recLen);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // constructor
+
+    /************************************************************************************
+     * Open an existing file of records written by a file list with the given domains
+     * and String field size.
+     *
+     * @param path      the path of the file
+     * @param domain    the attribute domains
+     * @param strBytes  the maximum number of bytes in a String field
+     * @return  a file list over the records in the file
+     */
+    static FileList open (String path, Class [] domain, int strBytes)
+    {
+        return new FileList (path, domain, strBytes, poolSize, false);
+    } // open
+
+    /************************************************************************************
+     * Return the number of records stored.
+     *
+     * @return  the number of records
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Return the i-th record decoded as a tuple.
+     *
+     * @param i  the record number
+     * @return  the tuple
+     */
+    public synchronized Comparable [] get (int i)
+    {
+        Objects.checkIndex (i, size);
+        var buf = page (i / perPage, false).buf;
+        var pos = (i % perPage) * recLen;
+        var t   = new Comparable [domain.length];
+        for (var j = 0; j < t.length; j++) t [j] = read (buf, pos + offset [j], domain [j]);
+        return t;
+    } // get
+
+    /************************************************************************************
+     * Replace the i-th record.
+     *
+     * @param i  the record number
+     * @param t  the new tuple
+     * @return  the previous tuple
+     */
+    public synchronized Comparable [] set (int i, Comparable [] t)
+    {
+        var old = get (i);
+        store (i, t);
+        return old;
+    } // set
+
+    /************************************************************************************
+     * Insert a record.  Only appending (i == size) is supported.
+     *
+     * @param i  the record number (must equal size)
+     * @param t  the tuple to append
+     */
+    public synchronized void add (int i, Comparable [] t)
+    {
+        if (i != size) throw new UnsupportedOperationException ("FileList only supports appending");
+        store (size++, t);
+        modCount++;
+    } // add
+
+    /************************************************************************************
+     * Remove all records, emptying the buffer pool and truncating the file.
+     */
+    public synchronized void clear ()
+    {
+        try {
+            pool ().clear ();
+            file ().setLength (0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        size = 0;
+        modCount++;
+    } // clear
+
+    /************************************************************************************
+     * Write all dirty pages in the buffer pool back to the file.
+     */
+    public synchronized void flush ()
+    {
+        try {
+            for (var p : pool ().values ()) writePage (p);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // flush
+
+    /************************************************************************************
+     * Flush the buffer pool and close the file.  The file is reopened if the list is
+     * accessed again.
+     */
+    public synchronized void close ()
+    {
+        if (file == null) return;
+        flush ();
+        try {
+            file.close ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        file = null;
+        pool = null;
+    } // close
+
+    /************************************************************************************
+     * Return the maximum number of bytes in a String field.
+     *
+     * @return  the String field size
+     */
+    int strBytes ()
+    {
+        return strBytes;
+    } // strBytes
+
+    /************************************************************************************
+     * Return the path of the file holding the records.
+     *
+     * @return  the path
+     */
+    String path ()
+    {
+        return path;
+    } // path
+
+    /************************************************************************************
+     * Return the number of pages read from and written to the file so far.
+     *
+     * @return  the page reads and writes
+     */
+    public synchronized int [] ioCount ()
+    {
+        return new int [] { reads, writes };
+    } // ioCount
+
+    //-----------------------------------------------------------------------------------
+    // Private Methods
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Lay out the fields of a record with the given domains, filling in their byte
+     * offsets and returning the record length.  Shared with MappedList, which uses the
+     * same record format.
+     *
+     * @param domain    the attribute domains
+     * @param strBytes  the maximum number of bytes in a String field
+     * @param offset    the array to fill with the field offsets
+     * @return  the record length (in bytes)
+     */
+    static int layout (Class [] domain, int strBytes, int [] offset)
+    {
+        var len = 0;
+        for (var j = 0; j < domain.length; j++) {
+            offset [j] = len;
+            len += width (domain [j], strBytes);
+        } // for
+        return Math.max (len, 1);
+    } // layout
+
+    /************************************************************************************
+     * Return the width (in bytes) of a field with the given domain.
+     *
+     * @param dom       the domain of the field
+     * @param strBytes  the maximum number of bytes in a String field
+     * @return  the field width
+     */
+    private static int width (Class dom, int strBytes)
+    {
+        if (dom == Integer.class || dom == Float.class)   return 4;
+        if (dom == Long.class    || dom == Double.class)  return 8;
+        if (dom == Short.class   || dom == Character.class) return 2;
+        if (dom == Byte.class)   return 1;
+        if (dom == String.class) return 2 + strBytes;
+        throw new IllegalArgumentException ("FileList does not support domain " + dom.getSimpleName ());
+    } // width
+
+    /************************************************************************************
+     * Encode tuple t into record i.
+     *
+     * @param i  the record number
+     * @param t  the tuple
+     */
+    private void store (int i, Comparable [] t)
+    {
+        var p   = page (i / perPage, i == size - 1 && i % perPage == 0);
+        var pos = (i % perPage) * recLen;
+        for (var j = 0; j < domain.length; j++) write (p.buf, pos + offset [j], domain [j], strBytes, t [j]);
+        p.dirty = true;
+    } // store
+
+    /************************************************************************************
+     * Read the field with domain dom at position pos of buffer buf.
+     *
+     * @param buf  the page buffer
+     * @param pos  the position of the field
+     * @param dom  the domain of the field
+     * @return  the value
+     */
+    static Comparable read (ByteBuffer buf, int pos, Class dom)
+    {
+        if (dom == Integer.class)   return buf.getInt (pos);
+        if (dom == Long.class)      return buf.getLong (pos);
+        if (dom == Double.class)    return buf.getDouble (pos);
+        if (dom == Float.class)     return buf.getFloat (pos);
+        if (dom == Short.class)     return buf.getShort (pos);
+        if (dom == Byte.class)      return buf.get (pos);
+        if (dom == Character.class) return buf.getChar (pos);
+        var b = new byte [buf.getShort (pos)];
+        buf.get (pos + 2, b);
+        return new String (b, StandardCharsets.UTF_8);
+    } // read
+
+    /************************************************************************************
+     * Write value v with domain dom at position pos of buffer buf.
+     *
+     * @param buf       the page buffer
+     * @param pos       the position of the field
+     * @param dom       the domain of the field
+     * @param strBytes  the maximum number of bytes in a String field
+     * @param v         the value
+     */
+    static void write (ByteBuffer buf, int pos, Class dom, int strBytes, Comparable v)
+    {
+        if      (dom == Integer.class)   buf.putInt (pos, ((Number) v).intValue ());
+        else if (dom == Long.class)      buf.putLong (pos, ((Number) v).longValue ());
+        else if (dom == Double.class)    buf.putDouble (pos, ((Number) v).doubleValue ());
+        else if (dom == Float.class)     buf.putFloat (pos, ((Number) v).floatValue ());
+        else if (dom == Short.class)     buf.putShort (pos, ((Number) v).shortValue ());
+        else if (dom == Byte.class)      buf.put (pos, ((Number) v).byteValue ());
+        else if (dom == Character.class) buf.putChar (pos, (Character) v);
+        else {
+            var b = ((String) v).getBytes (StandardCharsets.UTF_8);
+            if (b.length > strBytes) {
+                throw new IllegalArgumentException ("string longer than " + strBytes + " bytes: " + v
+                                                    + " (see Table.setStringBytes)");
+            } // if
+            buf.putShort (pos, (short) b.length);
+            buf.put (pos + 2, b);
+        } // if
+    } // write
+
+    /************************************************************************************
+     * Return page number no from the buffer pool, reading it from the file (unless it is
+     * a fresh page) and evicting the least recently used page when the pool is full.
+     *
+     * @param no     the page number
+     * @param fresh  whether the page holds no records yet (so need not be read)
+     * @return  the page
+     */
+    private Page page (int no, boolean fresh)
+    {
+        var pl = pool ();
+        var p  = pl.get (no);
+        if (p != null) return p;
+        p = new Page (no, perPage * recLen);
+        try {
+            if (! fresh) {
+                var f     = file ();
+                var bytes = (int) Math.min (p.buf.capacity (), f.length () - (long) no * p.buf.capacity ());
+                if (bytes > 0) {
+                    f.seek ((long) no * p.buf.capacity ());
+                    f.readFully (p.buf.array (), 0, bytes);
+                    reads++;
+                } // if
+            } // if
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        pl.put (no, p);
+        return p;
+    } // page
+
+    /************************************************************************************
+     * Write page p back to the file if it is dirty.  Only the bytes of records in use are
+     * written, so the file length is always size * recLen once flushed.
+     *
+     * @param p  the page to write
+     */
+    private void writePage (Page p)
+            throws IOException
+    {
+        if (! p.dirty) return;
+        var first = (long) p.no * perPage;
+        var n     = (int) Math.min (perPage, size - first);
+        if (n > 0) {
+            var f = file ();
+            f.seek (first * recLen);
+            f.write (p.buf.array (), 0, n * recLen);
+            writes++;
+        } // if
+        p.dirty = false;
+    } // writePage
+
+    /************************************************************************************
+     * Return the open file, opening it if needed.
+     *
+     * @return  the random access file
+     */
+    private RandomAccessFile file ()
+            throws IOException
+    {
+        if (file == null) file = new RandomAccessFile (path, "rw");
+        return file;
+    } // file
+
+    /************************************************************************************
+     * Return the buffer pool, creating it if needed.  The pool is an access-ordered
+     * LinkedHashMap that writes back its least recently used page when it overflows.
+     *
+     * @return  the buffer pool
+     */
+    private LinkedHashMap <Integer, Page> pool ()
+    {
+        if (pool == null) {
+            pool = new LinkedHashMap <> (2 * poolPages, 0.75f, true) {
+                protected boolean removeEldestEntry (Map.Entry <Integer, Page> e)
+                {
+                    if (size () <= poolPages) return false;
+                    try {
+                        writePage (e.getValue ());
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException (ex);
+                    } // try
+                    return true;
+                } // removeEldestEntry
+            };
+        } // if
+        return pool;
+    } // pool
+
+    /************************************************************************************
+     * Flush dirty pages before serializing, so a saved table finds its records in the file.
+     *
+     * @param oos  the object output stream
+     */
+    private synchronized void writeObject (ObjectOutputStream oos)
+            throws IOException
+    {
+        if (pool != null) for (var p : pool.values ()) writePage (p);
+        oos.defaultWriteObject ();
+    } // writeObject
+
+} // FileList class
@@ -8,13 +8,19 @@ package AppSlash.Code;
  * @see http://leepoint.net/notes-java/data/expressions/22compareobjects.html
  */
 
+import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 
 import static java.lang.System.out;
 
 /*****************************************************************************************
  * The KeyType class provides a key type for handling both non-composite and composite keys.
  * A key is a minimal set of attributes that can be used to uniquely identify a tuple.
+ * Keys made of Integer, Long, Short, Byte, Double, Float, Character and String values have
+ * a normalized encoding: a byte array whose unsigned lexicographic order is the order of
+ * the keys (see encoded).  When enabled (see useNormalized), such keys are compared with
+ * Arrays.compareUnsigned over their (cached) encodings rather than component by component.
  */
 public class KeyType
         implements Comparable <KeyType>, Serializable
@@ -23,6 +29,22 @@ public class KeyType
      */
     private final Comparable [] key;
 
+    /** Whether keys are compared by their normalized encodings (when they have them).
+     */
+    private static volatile boolean normalized = true;
+
+    /** Marks a key that has no normalized encoding.
+     */
+    private static final byte [] NONE = new byte [0];
+
+    /** The normalized encoding of this key, NONE if it has none (null until needed).
+     */
+    private transient byte [] bytes;
+
+    /** The cached hash code (0 until computed).
+     */
+    private transient int hash;
+
     /*************************************************************************************
      * Construct an instance of KeyType from a Comparable array.
      * @param _key  the primary key
@@ -43,29 +65,185 @@ public class KeyType
         for (var i = 1; i < key.length; i++) key [i] = keys [i-1];
     } // constructor
 
+    /*************************************************************************************
+     * Return the attribute values making up this key.
+     * @return  the key values
+     */
+    Comparable [] values ()
+    {
+        return key;
+    } // values
+
     /*************************************************************************************
      * Compare two keys (negative => less than, zero => equals, positive => greater than).
+     * Keys of different lengths compare lexicographically, a key sorting just before
+     * the longer keys it is a prefix of (so a prefix can serve as a range bound).
      * @param k  the other key (to compare with this)
      * @return  resultant integer that's negative, zero or positive
      */
     @SuppressWarnings("unchecked")
     public int compareTo (KeyType k)
     {
-        for (var i = 0; i < key.length; i++) {
+        if (normalized) {
+            var a = encoded ();
+            var b = k.encoded ();
+            if (a != null && b != null) return Integer.signum (Arrays.compareUnsigned (a, b));
+        } // if
+
+        var n = Math.min (key.length, k.key.length);
+        for (var i = 0; i < n; i++) {
             if (key [i].compareTo (k.key [i]) < 0) return -1;
             if (key [i].compareTo (k.key [i]) > 0) return 1;
         } // for
-        return 0;
+        return Integer.compare (key.length, k.key.length);
     } // compareTo
 
     /*************************************************************************************
-     * Determine whether two keys are equal (equals must agree with compareTo).
+     * Turn comparison by normalized encodings on or off (it is on by default).
+     * @param on  whether to compare keys by their normalized encodings
+     */
+    public static void useNormalized (boolean on)
+    {
+        normalized = on;
+    } // useNormalized
+
+    /*************************************************************************************
+     * Return the normalized encoding of this key, computing it on first use.  Each
+     * component is a type tag followed by an order-preserving encoding of its value:
+     * fixed-width big-endian integers with the sign bit flipped, floating point bits
+     * flipped so that they order as Double.compare / Float.compare does, and Strings one
+     * byte per char below 0x7e (0x7f and two bytes for others) ending with a 0 byte.
+     * Every component encoding is prefix-free, so comparing encodings compares keys
+     * component by component, with a prefix of a longer key sorting first.
+     * @return  the encoding, or null if some component is of an unsupported type
+     */
+    byte [] encoded ()
+    {
+        var b = bytes;
+        if (b == null) bytes = b = encode (key);
+        return (b == NONE) ? null : b;
+    } // encoded
+
+    /*************************************************************************************
+     * Encode the key values (see encoded).
+     * @param key  the key values
+     * @return  the encoding, or NONE if some value is of an unsupported type
+     */
+    private static byte [] encode (Comparable [] key)
+    {
+        var os = new ByteArrayOutputStream (16 * key.length);
+        for (var v : key) {
+            if (v instanceof Integer x)        { os.write (1); putLong (os, x ^ Integer.MIN_VALUE, 4); }
+            else if (v instanceof Long x)      { os.write (2); putLong (os, x ^ Long.MIN_VALUE, 8); }
+            else if (v instanceof Double x)    { var l = Double.doubleToLongBits (x);
+                                                 os.write (3); putLong (os, (l < 0) ? ~l : l ^ Long.MIN_VALUE, 8); }
+            else if (v instanceof Float x)     { var i = Float.floatToIntBits (x);
+                                                 os.write (4); putLong (os, (i < 0) ? ~i : i ^ Integer.MIN_VALUE, 4); }
+            else if (v instanceof Short x)     { os.write (5); putLong (os, x ^ Short.MIN_VALUE, 2); }
+            else if (v instanceof Byte x)      { os.write (6); putLong (os, x ^ Byte.MIN_VALUE, 1); }
+            else if (v instanceof Character x) { os.write (7); putLong (os, x, 2); }
+            else if (v instanceof String x) {
+                os.write (8);
+                for (var i = 0; i < x.length (); i++) {
+                    var c = x.charAt (i);
+                    if (c < 0x7e) os.write (c + 1);                    // 0x01 .. 0x7e
+                    else          { os.write (0x7f); putLong (os, c, 2); }
+                } // for
+                os.write (0);                                          // end of string
+            } else {
+                return NONE;
+            } // if
+        } // for
+        return os.toByteArray ();
+    } // encode
+
+    /*************************************************************************************
+     * Write the low n bytes of v in big-endian order.
+     */
+    private static void putLong (ByteArrayOutputStream os, long v, int n)
+    {
+        for (var i = n - 1; i >= 0; i--) os.write ((int) (v >>> (8 * i)));
+    } // putLong
+
+    /*************************************************************************************
+     * Return the key with the given normalized encoding (the inverse of encoded).
+     * @param b  the normalized encoding
+     * @return  the key
+     */
+    static KeyType decode (byte [] b)
+    {
+        var vals = new java.util.ArrayList <Comparable> ();
+        for (var p = 0; p < b.length; ) {
+            var tag = b [p++];
+            switch (tag) {
+            case 1 -> { vals.add ((int) getLong (b, p, 4) ^ Integer.MIN_VALUE); p += 4; }
+            case 2 -> { vals.add (getLong (b, p, 8) ^ Long.MIN_VALUE); p += 8; }
+            case 3 -> { var l = getLong (b, p, 8);
+                        vals.add (Double.longBitsToDouble ((l < 0) ? l ^ Long.MIN_VALUE : ~l)); p += 8; }
+            case 4 -> { var i = (int) getLong (b, p, 4);
+                        vals.add (Float.intBitsToFloat ((i < 0) ? i ^ Integer.MIN_VALUE : ~i)); p += 4; }
+            case 5 -> { vals.add ((short) ((short) getLong (b, p, 2) ^ Short.MIN_VALUE)); p += 2; }
+            case 6 -> { vals.add ((byte) ((byte) getLong (b, p, 1) ^ Byte.MIN_VALUE)); p += 1; }
+            case 7 -> { vals.add ((char) getLong (b, p, 2)); p += 2; }
+            case 8 -> {
+                var sb = new StringBuilder ();
+                for (int c; (c = b [p++] & 0xff) != 0; ) {
+                    if (c < 0x7f) sb.append ((char) (c - 1));
+                    else          { sb.append ((char) getLong (b, p, 2)); p += 2; }
+                } // for
+                vals.add (sb.toString ());
+            } // case
+            default -> throw new IllegalArgumentException ("bad tag " + tag + " in normalized key");
+            } // switch
+        } // for
+        var k = new KeyType (vals.toArray (new Comparable [0]));
+        k.bytes = b;
+        return k;
+    } // decode
+
+    /*************************************************************************************
+     * Read n bytes at position p of b as a big-endian unsigned number.
+     */
+    private static long getLong (byte [] b, int p, int n)
+    {
+        var v = 0L;
+        for (var i = 0; i < n; i++) v = (v << 8) | (b [p + i] & 0xff);
+        return v;
+    } // getLong
+
+    /*************************************************************************************
+     * Compare the leading components of this key with a (possibly shorter) prefix key.
+     * @param prefix  the prefix key (to compare with the start of this)
+     * @return  negative, zero or positive as this key's prefix is less, equal or greater
+     */
+    @SuppressWarnings("unchecked")
+    int comparePrefix (KeyType prefix)
+    {
+        var n = Math.min (key.length, prefix.key.length);
+        for (var i = 0; i < n; i++) {
+            var c = key [i].compareTo (prefix.key [i]);
+            if (c != 0) return c;
+        } // for
+        return 0;
+    } // comparePrefix
+
+    /*************************************************************************************
+     * Determine whether two keys are equal (equals must agree with compareTo).  Hash
+     * probes should not pay for encoding the probe key, so encodings are only compared
+     * when both keys already have them.
      * @param k  the other key (to compare with this)
      * @return  true if equal, false otherwise
      */
+    @SuppressWarnings("unchecked")
     public boolean equals (Object k)
     {
-        return compareTo ((KeyType) k) == 0;
+        var o = (KeyType) k;
+        var a = bytes;
+        var b = o.bytes;
+        if (a != null && b != null && a != NONE && b != NONE) return Arrays.equals (a, b);
+        if (key.length != o.key.length) return false;
+        for (var i = 0; i < key.length; i++) if (key [i].compareTo (o.key [i]) != 0) return false;
+        return true;
     } // equals
 
     /*************************************************************************************
@@ -74,8 +252,11 @@ public class KeyType
      */
     public int hashCode ()
     {
-        var sum = 0;
-        for (var i = 0; i < key.length; i++) sum = 7 * sum + key [i].hashCode ();
+        var sum = hash;
+        if (sum == 0) {
+            for (var i = 0; i < key.length; i++) sum = 7 * sum + key [i].hashCode ();
+            hash = sum;
+        } // if
         return sum;
     } // hashCode
 
@@ -90,6 +271,53 @@ public class KeyType
         return s + (" )");
     } // toString
 
+    /*************************************************************************************
+     * This inner class provides a reusable key for probing indexes: a mutable view over
+     * given columns of one tuple at a time, so a probe loop creates no keys or arrays.
+     * A probe is compared component by component (it is never encoded) and must not be
+     * stored in a map; use copy to obtain a key that can be.
+     */
+    static final class Probe
+            extends KeyType
+    {
+        /** The positions of the key columns in the tuples.
+         */
+        private final int [] cols;
+
+        /*********************************************************************************
+         * Construct a probe over the given columns (the positions returned by match).
+         * @param _cols  the column positions
+         */
+        Probe (int [] _cols)
+        {
+            super (new Comparable [_cols.length]);
+            cols = _cols;
+        } // constructor
+
+        /*********************************************************************************
+         * Point the probe at tuple t, resetting the cached hash code.
+         * @param t  the tuple whose key columns are viewed
+         * @return  this probe
+         */
+        Probe of (Comparable [] t)
+        {
+            var k = values ();
+            for (var j = 0; j < cols.length; j++) k [j] = t [cols [j]];
+            ((KeyType) this).bytes = NONE;
+            ((KeyType) this).hash  = 0;
+            return this;
+        } // of
+
+        /*********************************************************************************
+         * Return an immutable key equal to the current value of the probe.
+         */
+        KeyType copy ()
+        {
+            return new KeyType (values ().clone ());
+        } // copy
+
+    } // Probe inner class
+
     /*************************************************************************************
      * The main method is used for testing purposes only.
      * @param args  the command-line arguments
@@ -123,6 +351,29 @@ public class KeyType
         out.println ("key1.equals (key3): " + key1.equals (key3));
         out.println ("key1.hashCode () == key2.hashCode (): " + (key1.hashCode () == key2.hashCode ()));
         out.println ("key1.hashCode () == key3.hashCode (): " + (key1.hashCode () == key3.hashCode ()));
+        out.println ();
+        out.println ("decode (key1.encoded ()) = " + decode (key1.encoded ()));
+        if (args.length > 0 && args [0].equals ("-bench")) benchmark ((args.length > 1) ? Integer.valueOf (args [1]) : 1_000_000);
     } // main
 
+    /*************************************************************************************
+     * Time sorting composite (String, Integer) keys with and without normalized encodings.
+     * @param n  the number of keys to sort
+     */
+    static void benchmark (int n)
+    {
+        var rng  = new java.util.Random (0);
+        var keys = new KeyType [n];
+        for (var i = 0; i < n; i++) keys [i] = new KeyType ("Movie_" + rng.nextInt (n / 10 + 1), rng.nextInt ());
+        for (var on : new boolean [] { false, true, false, true }) {
+            useNormalized (on);
+            var ks = new KeyType [n];
+            for (var i = 0; i < n; i++) ks [i] = new KeyType (keys [i].values ());   // fresh, unencoded
+            var t0 = System.nanoTime ();
+            Arrays.sort (ks);
+            out.println ("sort " + n + " keys, normalized = " + on + ": " + (System.nanoTime () - t0) / 1E6 + " ms");
+        } // for
+        useNormalized (true);
+    } // benchmark
+
 } // KeyType class
@@ -21,7 +21,7 @@ public class LinHashMap <K, V>
 {
     /** The debug flag
      */
-    private static final boolean DEBUG = true;
+    private static final boolean DEBUG = false;
 
     /** The number of slots (for key-value pairs) per bucket.
      */
@@ -64,6 +64,14 @@ public class LinHashMap <K, V>
             return null;
         } // find
 
+        V replace (K k, V v)
+        {
+            for (var j = 0; j < nKeys; j++) {
+                if (key[j].equals (k)) { var old = value[j]; value[j] = v; return old; }
+            } // for
+            return null;
+        } // replace
+
         void add (K k, V v)
         {
             key[nKeys]   = k;
@@ -158,9 +166,7 @@ public class LinHashMap <K, V>
     @SuppressWarnings("unchecked")
     public V get (Object key)
     {
-        var i = h (key);
-        if(i < isplit) i = h2(key);
-        return find ((K) key, hTable.get (i), true);
+        return find ((K) key, hTable.get (home (key)), true);
     } // get
 
     /********************************************************************************
@@ -172,28 +178,20 @@ public class LinHashMap <K, V>
      */
     public V put (K key, V value)
     {
-        var i    = h (key);                                                  // hash to i-th bucket chain
-        //if(i < isplit) i = h2(key);
-        var bh   = hTable.get (i);                                           // start with home bucket
-        var oldV = find (key, bh, false);                                   // find old value associated with key
-        out.println ("LinearHashMap.put: key = " + key + ", h() = " + i + ", value = " + value);
+        var i    = home (key);                                               // hash to i-th bucket chain
+        if (DEBUG) out.println ("LinearHashMap.put: key = " + key + ", h() = " + i + ", value = " + value);
+        for (var b = hTable.get (i); b != null; b = b.next) {               // replace the value of an old key
+            var oldV = b.replace (key, value);
+            if (oldV != null) return oldV;
+        } // for
+
         keyCount++;                                                          // increment the key count
         var lf = loadFactor ();                                              // compute the load factor
         if (DEBUG) out.println ("put: load factor = " + lf);
         if (lf > THRESHOLD) split ();                                        // split beyond THRESHOLD
 
-        if(i < isplit) i = h2(key);
-        bh   = hTable.get (i);
-        var b = bh;
-        while (true)  {
-            if (b.nKeys < SLOTS) { b.add (key, value); return oldV; }
-            if (b.next != null) b = b.next; else break;
-        } // while
-
-        var bn = new Bucket ();
-        bn.add (key, value);
-        b.next = bn;                                                         // add new bucket at end of chain
-        return oldV;
+        append (hTable.get (home (key)), key, value);
+        return null;
     } // put
 
     /********************************************************************************
@@ -218,14 +216,23 @@ public class LinHashMap <K, V>
     } // print
 
     /********************************************************************************
-     * Return the size (SLOTS * number of home buckets) of the hash table.
-     * @return  the size of the hash table
+     * Return the number of keys stored in the hash table.
+     * @return  the number of keys
      */
     public int size ()
     {
-        return SLOTS * (mod1 + isplit);
+        return keyCount;
     } // size
 
+    /********************************************************************************
+     * Return the capacity (SLOTS * number of home buckets) of the hash table.
+     * @return  the capacity of the hash table
+     */
+    public int capacity ()
+    {
+        return SLOTS * (mod1 + isplit);
+    } // capacity
+
     /********************************************************************************
      * Split bucket chain 'isplit' by creating a new bucket chain at the end of the
      * hash table and redistributing the keys according to the high resolution hash
@@ -234,7 +241,7 @@ public class LinHashMap <K, V>
      */
     private void split ()
     {
-        out.println ("split: bucket chain " + isplit);
+        if (DEBUG) out.println ("split: bucket chain " + isplit);
 
         //  T O   B E   I M P L E M E N T E D
 
@@ -261,14 +268,7 @@ public class LinHashMap <K, V>
 
         for (var keys:
                 splitMap.keySet()) {
-            var index=h(keys);
-            if(index<isplit) index = h2(keys);
-            //out.println(index+"----"+keys);
-            var bucket = hTable.get(index);       // Getting the bucket with the corresponding index
-            if (bucket.nKeys < SLOTS) {
-                //out.println("keys==="+ keys);
-                bucket.add(keys,splitMap.get(keys));
-            }//if
+            append(hTable.get(home(keys)), keys, splitMap.get(keys));   // chain overflow buckets as needed
         }//for
 
         /**
@@ -290,9 +290,39 @@ public class LinHashMap <K, V>
      */
     private double loadFactor ()
     {
-        return keyCount / (double) size ();
+        return keyCount / (double) capacity ();
     } // loadFactor
 
+    /********************************************************************************
+     * Add the key-value pair to the first bucket in the chain starting with home
+     * bucket bh that has a free slot, adding a new bucket at the end of the chain
+     * if they are all full.
+     * @param bh     the given home bucket
+     * @param key    the key to add
+     * @param value  the value to add
+     */
+    private void append (Bucket bh, K key, V value)
+    {
+        var b = bh;
+        while (b.nKeys == SLOTS) {
+            if (b.next == null) b.next = new Bucket ();                      // add new bucket at end of chain
+            b = b.next;
+        } // while
+        b.add (key, value);
+    } // append
+
+    /********************************************************************************
+     * Return the home bucket for the key, using the high resolution hash function
+     * for buckets that have already been split in the current phase.
+     * @param key  the key to hash
+     * @return  the location of the bucket chain for the key
+     */
+    private int home (Object key)
+    {
+        var i = h (key);
+        return (i < isplit) ? h2 (key) : i;
+    } // home
+
     /********************************************************************************
      * Find the key in the bucket chain that starts with home bucket bh.
      * @param key     the key to find
@@ -317,7 +347,7 @@ public class LinHashMap <K, V>
      */
     private int h (Object key)
     {
-        return key.hashCode () % mod1;
+        return Math.floorMod (key.hashCode (), mod1);
     } // h
 
     /********************************************************************************
@@ -327,7 +357,7 @@ public class LinHashMap <K, V>
      */
     private int h2 (Object key)
     {
-        return key.hashCode () % mod2;
+        return Math.floorMod (key.hashCode (), mod2);
     } // h2
 
     /********************************************************************************
@@ -0,0 +1,252 @@
+package AppSlash.Code;
+/************************************************************************************
+ * @file LongKeyIndex.java
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * The LongKeyIndex class provides a primary index for tables whose key is a single
+ * integral (Integer, Long, Short or Byte) column.  Keys are kept as primitive longs in
+ * a flat open-addressed (linear probing) array, parallel to an array of row ids, i.e.,
+ * positions of the tuples in the table's tuple list, so a point lookup allocates
+ * nothing and follows no bucket objects.
+ * It is presented as a Map from KeyType to tuple so that the Table operators work
+ * unchanged; rows already in the tuple list are indexed with put (key, row), while
+ * putting a tuple appends it to the list.
+ */
+public class LongKeyIndex
+        extends AbstractMap <KeyType, Comparable []>
+{
+    /** The maximum load factor before the arrays are doubled.
+     */
+    private static final double LOAD = 0.5;
+
+    /** The tuples the row ids refer to.
+     */
+    private final List <Comparable []> tuples;
+
+    /** The position of the key column in the tuples.
+     */
+    private final int col;
+
+    /** The keys, by slot.
+     */
+    private long [] keys;
+
+    /** The row id plus one for each slot (0 for an empty slot).
+     */
+    private int [] rows;
+
+    /** The number of keys in the index.
+     */
+    private int size = 0;
+
+    /********************************************************************************
+     * Return whether a LongKeyIndex can index a key made of the given columns.
+     * @param domain   the attribute domains of the table
+     * @param keyCols  the positions of the key columns
+     */
+    static boolean applies (Class [] domain, int [] keyCols)
+    {
+        if (keyCols.length != 1) return false;
+        var d = domain [keyCols [0]];
+        return d == Integer.class || d == Long.class || d == Short.class || d == Byte.class;
+    } // applies
+
+    /********************************************************************************
+     * Return whether the value is of an integral type held exactly by a long.
+     * @param v  the value
+     */
+    static boolean isIntegral (Object v)
+    {
+        return v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte;
+    } // isIntegral
+
+    /********************************************************************************
+     * Construct an index over the key column of the tuples, indexing the tuples
+     * already in the list (a later row replaces an earlier one with the same key).
+     * @param _tuples  the tuples to index
+     * @param _col     the position of the key column
+     */
+    public LongKeyIndex (List <Comparable []> _tuples, int _col)
+    {
+        tuples = _tuples;
+        col    = _col;
+        var cap = 16;
+        while (cap * LOAD < _tuples.size ()) cap <<= 1;
+        keys = new long [cap];
+        rows = new int [cap];
+        var i = 0;
+        for (var t : _tuples) put (((Number) t [col]).longValue (), i++);
+    } // constructor
+
+    /********************************************************************************
+     * Return the home slot for the key (Fibonacci hashing spreads sequential ids).
+     * @param k  the key
+     */
+    private int slot (long k)
+    {
+        return (int) ((k * 0x9E37_79B9_7F4A_7C15L) >>> 32) & (keys.length - 1);
+    } // slot
+
+    /********************************************************************************
+     * Return the row id of the tuple with the given key.
+     * @param k  the key
+     * @return  the row id, or -1 if the key is absent
+     */
+    public int row (long k)
+    {
+        for (var s = slot (k); rows [s] != 0; s = (s + 1) & (keys.length - 1)) {
+            if (keys [s] == k) return rows [s] - 1;
+        } // for
+        return -1;
+    } // row
+
+    /********************************************************************************
+     * Return the tuple with the given key.
+     * @param k  the key
+     * @return  the tuple, or null if the key is absent
+     */
+    public Comparable [] get (long k)
+    {
+        var r = row (k);
+        return (r < 0) ? null : tuples.get (r);
+    } // get
+
+    /********************************************************************************
+     * Given the key (a KeyType holding one integral value), look up the tuple.
+     * @param key  the key used for look up
+     * @return  the tuple associated with the key or null if not found
+     */
+    public Comparable [] get (Object key)
+    {
+        if (! (key instanceof KeyType kt) || kt.values ().length != 1) return null;
+        var v = kt.values () [0];
+        return isIntegral (v) ? get (((Number) v).longValue ()) : null;
+    } // get
+
+    /********************************************************************************
+     * Return whether the index contains the key.
+     * @param key  the key to look for
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Index row r under key k, replacing the row of an existing key.
+     * @param k  the key
+     * @param r  the row id (position in the tuple list)
+     * @return  the previous row id for the key, or -1 if there was none
+     */
+    public int put (long k, int r)
+    {
+        if (size + 1 > keys.length * LOAD) grow ();
+        var s = slot (k);
+        for ( ; rows [s] != 0; s = (s + 1) & (keys.length - 1)) {
+            if (keys [s] == k) { var old = rows [s] - 1; rows [s] = r + 1; return old; }
+        } // for
+        keys [s] = k;
+        rows [s] = r + 1;
+        size++;
+        return -1;
+    } // put
+
+    /********************************************************************************
+     * Append the tuple to the tuple list and index its row under the key (a KeyType
+     * holding one integral value).
+     * @param key  the key
+     * @param tup  the tuple to append
+     * @return  the tuple previously indexed under the key, or null if none
+     */
+    public Comparable [] put (KeyType key, Comparable [] tup)
+    {
+        var v = key.values ();
+        if (v.length != 1 || ! isIntegral (v [0])) throw new IllegalArgumentException ("LongKeyIndex: not an integral key " + key);
+        tuples.add (tup);
+        var old = put (((Number) v [0]).longValue (), tuples.size () - 1);
+        return (old < 0) ? null : tuples.get (old);
+    } // put
+
+    /********************************************************************************
+     * Double the capacity of the index, reinserting the keys.
+     */
+    private void grow ()
+    {
+        var oldKeys = keys;
+        var oldRows = rows;
+        keys = new long [2 * oldKeys.length];
+        rows = new int [2 * oldRows.length];
+        size = 0;
+        for (var s = 0; s < oldKeys.length; s++) if (oldRows [s] != 0) put (oldKeys [s], oldRows [s] - 1);
+    } // grow
+
+    /********************************************************************************
+     * Return the number of keys in the index.
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /********************************************************************************
+     * Return a set view of the entries (in slot order), each made on demand from the
+     * key column of its tuple.
+     * @return  the set view of the index
+     */
+    public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+            public int size () { return size; }
+            public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+            {
+                return new Iterator <Map.Entry <KeyType, Comparable []>> () {
+                    int s = advance (0);
+
+                    int advance (int from)
+                    {
+                        while (from < rows.length && rows [from] == 0) from++;
+                        return from;
+                    } // advance
+
+                    public boolean hasNext () { return s < rows.length; }
+
+                    public Map.Entry <KeyType, Comparable []> next ()
+                    {
+                        if (! hasNext ()) throw new NoSuchElementException ();
+                        var t = tuples.get (rows [s] - 1);
+                        s = advance (s + 1);
+                        return new AbstractMap.SimpleImmutableEntry <> (new KeyType (t [col]), t);
+                    } // next
+                };
+            } // iterator
+        };
+    } // entrySet
+
+    /********************************************************************************
+     * The main method used for testing: compare lookup times with LinHashMap.
+     * @param args  the command-line arguments (args[0] gives number of keys)
+     */
+    public static void main (String [] args)
+    {
+        var n      = (args.length > 0) ? Integer.valueOf (args[0]) : 1_000_000;
+        var tuples = new ArrayList <Comparable []> (n);
+        for (var i = 0; i < n; i++) tuples.add (new Comparable [] { 3 * i, "name" + i });
+
+        var lk = new LongKeyIndex (tuples, 0);
+        var lh = new LinHashMap <KeyType, Comparable []> (KeyType.class, Comparable [].class);
+        for (var t : tuples) lh.put (new KeyType (t [0]), t);
+
+        var t0 = System.nanoTime ();
+        for (var i = 0; i < n; i++) if (lk.get (3L * i) == null) throw new IllegalStateException ("lost key " + i);
+        var t1 = System.nanoTime ();
+        for (var i = 0; i < n; i++) if (lh.get (new KeyType (3 * i)) == null) throw new IllegalStateException ("lost key " + i);
+        var t2 = System.nanoTime ();
+        out.println ("LongKeyIndex: " + (t1 - t0) / 1E6 + " ms, LinHashMap: " + (t2 - t1) / 1E6 + " ms for " + n + " lookups");
+    } // main
+
+} // LongKeyIndex class
@@ -0,0 +1,385 @@
+package AppSlash.Code;
+/****************************************************************************************
+ * @file  MappedList.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+/****************************************************************************************
+ * The MappedList class stores tuples as fixed-size records (in the same format as
+ * FileList) in a file that is memory-mapped with FileChannel.map, presenting them as a
+ * List of tuples.  Fields are decoded directly from the MappedByteBuffer segments without
+ * copying through a buffer pool; the operating system pages the file in and out.  The
+ * file starts with a header holding the record length and the number of records, so
+ * reopening a saved list only maps the file (constant time, regardless of its size).
+ * The file grows with the data: the first segment holds a few KB of records and each
+ * further segment doubles, up to SEG_SIZE, after which segments are all that large.
+ * Mapping segments is synchronized, so several threads may read the list at once.
+ */
+public class MappedList
+        extends AbstractList <Comparable []>
+        implements Serializable, RandomAccess
+{
+    /** The magic number identifying a mapped list file.
+     */
+    private static final int MAGIC = 0x4d4c5354;
+
+    /** The length (in bytes) of the header: magic, record length and size.
+     */
+    private static final int HEADER = 16;
+
+    /** The target size (in bytes) of the first mapped segment.
+     */
+    private static final int FIRST_SEG = 1 << 12;
+
+    /** The target size (in bytes) of the largest mapped segments.
+     */
+    private static final int SEG_SIZE = 1 << 24;
+
+    /** The path of the file holding the records.
+     */
+    private final String path;
+
+    /** Array of attribute domains (one field per domain).
+     */
+    private final Class [] domain;
+
+    /** The byte offsets of the fields within a record.
+     */
+    private final int [] offset;
+
+    /** The maximum number of bytes in a String field.
+     */
+    private final int strBytes;
+
+    /** The length (in bytes) of a record.
+     */
+    private final int recLen;
+
+    /** The number of records in the first mapped segment.
+     */
+    private final int firstRecs;
+
+    /** The number of segments that double in size (later ones hold firstRecs << doublings).
+     */
+    private final int doublings;
+
+    /** The number of records stored (kept in the header, read when the file is mapped).
+     */
+    private transient int size;
+
+    /** The open file channel (reopened on demand after deserialization).
+     */
+    private transient FileChannel channel;
+
+    /** The mapped header.
+     */
+    private transient MappedByteBuffer header;
+
+    /** The mapped segments (mapped on first access).
+     */
+    private transient List <MappedByteBuffer> seg;
+
+    /************************************************************************************
+     * Construct an empty mapped list for tuples with the given domains, stored in the
+     * file with the given path (truncating any existing file).
+     *
+     * @param _path    the path of the file
+     * @param _domain  the attribute domains
+     */
+    public MappedList (String _path, Class [] _domain)
+    {
+        this (_path, _domain, FileList.STR_BYTES);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty mapped list for tuples with the given domains, stored in the
+     * file with the given path (truncating any existing file).
+     *
+     * @param _path      the path of the file
+     * @param _domain    the attribute domains
+     * @param _strBytes  the maximum number of bytes in a String field
+     */
+    public MappedList (String _path, Class [] _domain, int _strBytes)
+    {
+        this (_path, _domain, _strBytes, true);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a mapped list over the file with the given path, either replacing it or
+     * adopting the records already in it.
+     *
+     * @param _path      the path of the file
+     * @param _domain    the attribute domains
+     * @param _strBytes  the maximum number of bytes in a String field
+     * @param replace    whether to replace the file with an empty one
+     */
+    private MappedList (String _path, Class [] _domain, int _strBytes, boolean replace)
+    {
+        path     = _path;
+        domain   = _domain;
+        strBytes = _strBytes;
+        offset   = new int [domain.length];
+        recLen   = FileList.layout (domain, strBytes, offset);
+        firstRecs = Math.max (FIRST_SEG / recLen, 1);
+        doublings = 31 - Integer.numberOfLeadingZeros (Math.max (SEG_SIZE / recLen / firstRecs, 1));
+        try {
+            new File (path).getAbsoluteFile ().getParentFile ().mkdirs ();
+            if (replace) Files.deleteIfExists (Paths.get (path));
+            open ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // constructor
+
+    /************************************************************************************
+     * Open an existing mapped list file written for the given domains and String field
+     * size.  Only the file is mapped, so this takes constant time.
+     *
+     * @param path      the path of the file
+     * @param domain    the attribute domains
+     * @param strBytes  the maximum number of bytes in a String field
+     * @return  a mapped list over the records in the file
+     */
+    static MappedList open (String path, Class [] domain, int strBytes)
+    {
+        return new MappedList (path, domain, strBytes, false);
+    } // open
+
+    /************************************************************************************
+     * Return the number of records stored.
+     *
+     * @return  the number of records
+     */
+    public int size ()
+    {
+        if (channel == null) reopen ();
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Return the i-th record decoded as a tuple.
+     *
+     * @param i  the record number
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        Objects.checkIndex (i, size ());
+        var k   = segOf (i);
+        var buf = segment (k);
+        var pos = (int) (i - startOf (k)) * recLen;
+        var t   = new Comparable [domain.length];
+        for (var j = 0; j < t.length; j++) t [j] = FileList.read (buf, pos + offset [j], domain [j]);
+        return t;
+    } // get
+
+    /************************************************************************************
+     * Replace the i-th record.
+     *
+     * @param i  the record number
+     * @param t  the new tuple
+     * @return  the previous tuple
+     */
+    public Comparable [] set (int i, Comparable [] t)
+    {
+        var old = get (i);
+        store (i, t);
+        return old;
+    } // set
+
+    /************************************************************************************
+     * Insert a record.  Only appending (i == size) is supported.
+     *
+     * @param i  the record number (must equal size)
+     * @param t  the tuple to append
+     */
+    public void add (int i, Comparable [] t)
+    {
+        if (i != size ()) throw new UnsupportedOperationException ("MappedList only supports appending");
+        store (size, t);
+        header.putLong (8, ++size);
+        modCount++;
+    } // add
+
+    /************************************************************************************
+     * Remove all records (the mapped segments are kept for reuse).
+     */
+    public void clear ()
+    {
+        if (channel == null) reopen ();
+        size = 0;
+        header.putLong (8, 0);
+        modCount++;
+    } // clear
+
+    /************************************************************************************
+     * Force the header and all mapped segments to be written to the file.
+     */
+    public synchronized void force ()
+    {
+        if (channel == null) return;
+        header.force ();
+        for (var b : seg) if (b != null) b.force ();
+    } // force
+
+    /************************************************************************************
+     * Force the records to the file, then close it and drop the mappings.  The file is
+     * reopened if the list is accessed again.
+     */
+    public synchronized void close ()
+    {
+        if (channel == null) return;
+        force ();
+        try {
+            channel.close ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        channel = null;
+        header  = null;
+        seg     = null;
+    } // close
+
+    /************************************************************************************
+     * Return the maximum number of bytes in a String field.
+     *
+     * @return  the String field size
+     */
+    int strBytes ()
+    {
+        return strBytes;
+    } // strBytes
+
+    /************************************************************************************
+     * Return the path of the file holding the records.
+     *
+     * @return  the path
+     */
+    String path ()
+    {
+        return path;
+    } // path
+
+    //-----------------------------------------------------------------------------------
+    // Private Methods
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Encode tuple t into record i.
+     *
+     * @param i  the record number
+     * @param t  the tuple
+     */
+    private void store (int i, Comparable [] t)
+    {
+        var k   = segOf (i);
+        var buf = segment (k);
+        var pos = (int) (i - startOf (k)) * recLen;
+        for (var j = 0; j < domain.length; j++) {
+            FileList.write (buf, pos + offset [j], domain [j], strBytes, t [j]);
+        } // for
+    } // store
+
+    /************************************************************************************
+     * Return the number of the segment holding record i.
+     *
+     * @param i  the record number
+     * @return  the segment number
+     */
+    private int segOf (int i)
+    {
+        var q = i / firstRecs + 1;                                    // doubling segment k holds q in [2^k, 2^(k+1))
+        if (q < (1 << doublings)) return 31 - Integer.numberOfLeadingZeros (q);
+        return doublings + (int) ((i - startOf (doublings)) / (firstRecs << doublings));
+    } // segOf
+
+    /************************************************************************************
+     * Return the number of the first record in segment k.
+     *
+     * @param k  the segment number
+     * @return  the first record number
+     */
+    private long startOf (int k)
+    {
+        if (k < doublings) return (long) firstRecs * ((1 << k) - 1);
+        return (long) firstRecs * ((1 << doublings) - 1) + (long) (k - doublings) * (firstRecs << doublings);
+    } // startOf
+
+    /************************************************************************************
+     * Return segment k, mapping it (and thereby extending the file) on first access.
+     *
+     * @param k  the segment number
+     * @return  the mapped segment
+     */
+    private synchronized ByteBuffer segment (int k)
+    {
+        if (channel == null) reopen ();
+        while (seg.size () <= k) seg.add (null);
+        var b = seg.get (k);
+        if (b == null) {
+            try {
+                var recs = firstRecs << Math.min (k, doublings);
+                b = channel.map (READ_WRITE, HEADER + startOf (k) * recLen, (long) recs * recLen);
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+            seg.set (k, b);
+        } // if
+        return b;
+    } // segment
+
+    /************************************************************************************
+     * Open the file and map its header, initializing the header of a new file and
+     * checking the header of an existing one.
+     */
+    private void open ()
+            throws IOException
+    {
+        channel = FileChannel.open (Paths.get (path), StandardOpenOption.CREATE,
+                                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        var fresh = channel.size () == 0;
+        header = channel.map (READ_WRITE, 0, HEADER);
+        seg    = new ArrayList <> ();
+        if (fresh) {
+            header.putInt (0, MAGIC).putInt (4, recLen).putLong (8, 0);
+        } else if (header.getInt (0) != MAGIC || header.getInt (4) != recLen) {
+            throw new IOException ("not a mapped list file for this schema: " + path);
+        } // if
+        size = (int) header.getLong (8);
+    } // open
+
+    /************************************************************************************
+     * Reopen the file (e.g., after the list has been deserialized).
+     */
+    private synchronized void reopen ()
+    {
+        if (channel != null) return;                                  // reopened by another thread
+        try {
+            open ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // reopen
+
+    /************************************************************************************
+     * Force the file to disk before serializing, so a saved table finds its records in
+     * the file when it is loaded.
+     *
+     * @param oos  the object output stream
+     */
+    private void writeObject (ObjectOutputStream oos)
+            throws IOException
+    {
+        force ();
+        oos.defaultWriteObject ();
+    } // writeObject
+
+} // MappedList class
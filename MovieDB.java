@@ -116,12 +116,31 @@ class MovieDB
         var t_select2 = movie.select (t -> (Integer) t[movie.col("year")] < 1980);
         t_select2.print ();
 
+        //--------------------- select: < (vectorized)
+
+        out.println ();
+        var t_select3 = movie.select ("year", "<", 1980);
+        t_select3.print ();
+
         //--------------------- indexed select: key
 
         out.println ();
         var t_iselect = movieStar.select (new KeyType ("Harrison_Ford"));
         t_iselect.print ();
 
+        //--------------------- indexed select: key range
+
+        out.println ();
+        var t_rselect = movie.select (new KeyType ("Rocky"), new KeyType ("Star_Wars"));
+        t_rselect.print ();
+
+        //--------------------- indexed select: secondary index
+
+        out.println ();
+        movie.createIndex ("studioName", Table.MapType.BPTREE_MAP);
+        var t_sselect = movie.select ("studioName", "==", "Fox");
+        t_sselect.print ();
+
         //--------------------- union: movie UNION cinema
 
         out.println ();
@@ -151,6 +170,29 @@ class MovieDB
         var i_join = movie.i_join ("studioName", "name", studio);
         i_join.print ();
 
+        //--------------------- h-join: movie JOIN studio ON studioName = name
+        out.println ();
+        var h_join = movie.h_join ("studioName", "name", studio);
+        h_join.print ();
+
+        //--------------------- sm-join: movie JOIN studio ON studioName = name
+        out.println ();
+        var sm_join = movie.sm_join ("studioName", "name", studio);
+        sm_join.print ();
+
+        //--------------------- ph-join: movie JOIN studio ON studioName = name
+        out.println ();
+        var ph_join = movie.ph_join ("studioName", "name", studio, 2);
+        ph_join.print ();
+
+        //--------------------- pipeline: select, join and project streamed tuple by tuple
+        out.println ();
+        var t_pipe = movie.scan ().select (t -> (Integer) t[movie.col("year")] < 1980)
+                          .join ("studioName", "name", studio.scan ())
+                          .project ("title year address")
+                          .materialize ("pipeline");
+        t_pipe.print ();
+
     } // main
 
 } // MovieDB class
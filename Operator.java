@@ -0,0 +1,499 @@
+package AppSlash.Code;
+/****************************************************************************************
+ * @file  Operator.java
+ */
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * This class provides pull-based (Volcano-style) relational algebra operators.  Each
+ * operator produces its result one tuple at a time through open, next and close, pulling
+ * tuples from its input operators as needed, so a chain of operators such as
+ *
+ *     movie.scan ().select (p).join ("studioName", "name", studio.scan ()).project ("title name")
+ *
+ * streams tuples through the whole pipeline without building intermediate tables.  Only
+ * materialize builds a Table (and its index) from the final result.
+ */
+public abstract class Operator
+{
+    /** Array of attribute names of the tuples produced.
+     */
+    protected final String [] attribute;
+
+    /** Array of attribute domains of the tuples produced.
+     */
+    protected final Class [] domain;
+
+    /** Key of the tuples produced.
+     */
+    protected final String [] key;
+
+    /** Map type for the index of a materialized result (that of the scanned table).
+     */
+    protected final Table.MapType mapType;
+
+    /************************************************************************************
+     * Construct an operator producing tuples with the given schema.
+     *
+     * @param _attribute  the attribute names
+     * @param _domain     the attribute domains
+     * @param _key        the key attributes
+     * @param _mapType    the map type for the index of a materialized result
+     */
+    protected Operator (String [] _attribute, Class [] _domain, String [] _key,
+                        Table.MapType _mapType)
+    {
+        attribute = _attribute;
+        domain    = _domain;
+        key       = _key;
+        mapType   = _mapType;
+    } // constructor
+
+    /************************************************************************************
+     * Prepare the operator (and its inputs) to produce tuples from the beginning.
+     */
+    public abstract void open ();
+
+    /************************************************************************************
+     * Produce the next tuple.
+     *
+     * @return  the next tuple, or null when there are no more tuples
+     */
+    public abstract Comparable [] next ();
+
+    /************************************************************************************
+     * Release the resources held by the operator (and its inputs).
+     */
+    public abstract void close ();
+
+    //-----------------------------------------------------------------------------------
+    // Pipeline construction
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Select the tuples produced by this operator satisfying the given predicate.
+     *
+     * #usage movie.scan ().select (t -> t[movie.col("year")].equals (1977))
+     *
+     * @param predicate  the check condition for tuples
+     * @return  the select operator
+     */
+    public Operator select (Predicate <Comparable []> predicate)
+    {
+        return new Select (this, predicate);
+    } // select
+
+    /************************************************************************************
+     * Project the tuples produced by this operator onto the given attributes.
+     *
+     * #usage movie.scan ().project ("title year studioNo")
+     *
+     * @param attributes  the attributes to project onto
+     * @return  the project operator
+     */
+    public Operator project (String attributes)
+    {
+        return new Project (this, attributes.split (" "));
+    } // project
+
+    /************************************************************************************
+     * Union the tuples produced by this operator and op2.
+     *
+     * #usage movie.scan ().union (cinema.scan ())
+     *
+     * @param op2  the rhs operator in the union operation
+     * @return  the union operator
+     */
+    public Operator union (Operator op2)
+    {
+        return new Union (this, op2);
+    } // union
+
+    /************************************************************************************
+     * Take the difference of the tuples produced by this operator and op2.
+     *
+     * #usage movie.scan ().minus (cinema.scan ())
+     *
+     * @param op2  the rhs operator in the minus operation
+     * @return  the minus operator
+     */
+    public Operator minus (Operator op2)
+    {
+        return new Minus (this, op2);
+    } // minus
+
+    /************************************************************************************
+     * Equi-join the tuples produced by this operator and op2 using a hash join that is
+     * built on op2 and probed by streaming this operator.
+     *
+     * #usage movie.scan ().join ("studioName", "name", studio.scan ())
+     *
+     * @param attributes1  the attributes of this operator's tuples to be compared
+     * @param attributes2  the attributes of op2's tuples to be compared
+     * @param op2          the rhs operator in the join operation
+     * @return  the join operator
+     */
+    public Operator join (String attributes1, String attributes2, Operator op2)
+    {
+        return new Join (this, attributes1.split (" "), attributes2.split (" "), op2);
+    } // join
+
+    /************************************************************************************
+     * Run the pipeline and collect its result into a new table (building its index with
+     * the map type of the scanned table).
+     *
+     * @param name  the name of the result table
+     * @return  a table containing all the tuples produced
+     */
+    public Table materialize (String name)
+    {
+        var rows = new ArrayList <Comparable []> ();
+        open ();
+        for (var t = next (); t != null; t = next ()) rows.add (t);
+        close ();
+        return Table.fromRows (name, attribute, domain, key, rows, mapType);
+    } // materialize
+
+    //-----------------------------------------------------------------------------------
+    // Helper methods
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the column position for the given attribute name.
+     *
+     * @param attr  the given attribute name
+     * @return  a column position, -1 if not found
+     */
+    public int col (String attr)
+    {
+        for (var i = 0; i < attribute.length; i++) {
+            if (attr.equals (attribute [i])) return i;
+        } // for
+        return -1;
+    } // col
+
+    /************************************************************************************
+     * Return the column positions for the given attribute names.
+     *
+     * @param attrs  the given attribute names
+     * @return  the column positions
+     */
+    int [] cols (String [] attrs)
+    {
+        var pos = new int [attrs.length];
+        for (var j = 0; j < attrs.length; j++) pos [j] = col (attrs [j]);
+        return pos;
+    } // cols
+
+    /************************************************************************************
+     * Extract the values at the given column positions from tuple t as a key.
+     *
+     * @param t     the tuple to extract from
+     * @param cols  the column positions
+     * @return  the key formed from those values
+     */
+    static KeyType keyOf (Comparable [] t, int [] cols)
+    {
+        var k = new Comparable [cols.length];
+        for (var j = 0; j < cols.length; j++) k [j] = t [cols [j]];
+        return new KeyType (k);
+    } // keyOf
+
+    //-----------------------------------------------------------------------------------
+    // Operators
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * The Scan operator produces the tuples stored in a list (e.g., a table's tuples).
+     */
+    static class Scan
+            extends Operator
+    {
+        private final List <Comparable []> tuples;
+        private Iterator <Comparable []> it;
+
+        Scan (String [] _attribute, Class [] _domain, String [] _key, Table.MapType _mapType,
+              List <Comparable []> _tuples)
+        {
+            super (_attribute, _domain, _key, _mapType);
+            tuples = _tuples;
+        } // constructor
+
+        public void open () { it = tuples.iterator (); }
+
+        public Comparable [] next () { return it.hasNext () ? it.next () : null; }
+
+        public void close () { it = null; }
+
+    } // Scan class
+
+    /************************************************************************************
+     * The Select operator passes on the input tuples satisfying a predicate.
+     */
+    static class Select
+            extends Operator
+    {
+        private final Operator input;
+        private final Predicate <Comparable []> predicate;
+
+        Select (Operator _input, Predicate <Comparable []> _predicate)
+        {
+            super (_input.attribute, _input.domain, _input.key, _input.mapType);
+            input     = _input;
+            predicate = _predicate;
+        } // constructor
+
+        public void open () { input.open (); }
+
+        public Comparable [] next ()
+        {
+            for (var t = input.next (); t != null; t = input.next ()) {
+                if (predicate.test (t)) return t;
+            } // for
+            return null;
+        } // next
+
+        public void close () { input.close (); }
+
+    } // Select class
+
+    /************************************************************************************
+     * The Project operator keeps only the given attributes of the input tuples.  When the
+     * input's key is not among them, duplicate result tuples are eliminated.
+     */
+    static class Project
+            extends Operator
+    {
+        private final Operator input;
+        private final int [] pos;
+        private final boolean keepsKey;
+        private Set <KeyType> seen;
+
+        Project (Operator _input, String [] attrs)
+        {
+            super (attrs, pick (_input.domain, _input.cols (attrs)),
+                   Arrays.asList (attrs).containsAll (Arrays.asList (_input.key)) ? _input.key : attrs,
+                   _input.mapType);
+            input    = _input;
+            pos      = _input.cols (attrs);
+            keepsKey = Arrays.asList (attrs).containsAll (Arrays.asList (_input.key));
+        } // constructor
+
+        private static Class [] pick (Class [] dom, int [] pos)
+        {
+            var d = new Class [pos.length];
+            for (var j = 0; j < pos.length; j++) d [j] = dom [pos [j]];
+            return d;
+        } // pick
+
+        public void open ()
+        {
+            input.open ();
+            seen = keepsKey ? null : new HashSet <> ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            for (var t = input.next (); t != null; t = input.next ()) {
+                var p = new Comparable [pos.length];
+                for (var j = 0; j < pos.length; j++) p [j] = t [pos [j]];
+                if (seen == null || seen.add (new KeyType (p))) return p;
+            } // for
+            return null;
+        } // next
+
+        public void close ()
+        {
+            input.close ();
+            seen = null;
+        } // close
+
+    } // Project class
+
+    /************************************************************************************
+     * The Union operator produces the tuples of its left input followed by those tuples
+     * of its right input whose key did not occur in the left input.
+     */
+    static class Union
+            extends Operator
+    {
+        private final Operator left;
+        private final Operator right;
+        private final boolean compatible;
+        private final int [] kPos;
+        private Set <KeyType> seen;
+        private boolean onLeft;
+
+        Union (Operator _left, Operator _right)
+        {
+            super (_left.attribute, _left.domain, _left.key, _left.mapType);
+            left       = _left;
+            right      = _right;
+            compatible = Arrays.equals (left.domain, right.domain);
+            kPos       = left.cols (key);
+            if (! compatible) out.println ("compatible ERROR: union of incompatible operators");
+        } // constructor
+
+        public void open ()
+        {
+            seen   = new HashSet <> ();
+            onLeft = true;
+            if (compatible) left.open ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            if (! compatible) return null;
+            if (onLeft) {
+                var t = left.next ();
+                if (t != null) { seen.add (keyOf (t, kPos)); return t; }
+                left.close ();
+                right.open ();
+                onLeft = false;
+            } // if
+            for (var t = right.next (); t != null; t = right.next ()) {
+                if (seen.add (keyOf (t, kPos))) return t;
+            } // for
+            return null;
+        } // next
+
+        public void close ()
+        {
+            if (compatible) { if (onLeft) left.close (); else right.close (); }
+            seen = null;
+        } // close
+
+    } // Union class
+
+    /************************************************************************************
+     * The Minus operator produces the tuples of its left input that do not occur in its
+     * right input.  Tuples are compared on the key when both inputs share it, otherwise
+     * on all attributes.  The right input is read into a hash set when opened.
+     */
+    static class Minus
+            extends Operator
+    {
+        private final Operator left;
+        private final Operator right;
+        private final boolean compatible;
+        private final int [] cPos;
+        private Set <KeyType> remove;
+
+        Minus (Operator _left, Operator _right)
+        {
+            super (_left.attribute, _left.domain, _left.key, _left.mapType);
+            left       = _left;
+            right      = _right;
+            compatible = Arrays.equals (left.domain, right.domain);
+            cPos       = left.cols (Arrays.equals (left.key, right.key) ? key : attribute);
+            if (! compatible) out.println ("compatible ERROR: minus of incompatible operators");
+        } // constructor
+
+        public void open ()
+        {
+            if (! compatible) return;
+            remove = new HashSet <> ();
+            right.open ();
+            for (var t = right.next (); t != null; t = right.next ()) remove.add (keyOf (t, cPos));
+            right.close ();
+            left.open ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            if (! compatible) return null;
+            for (var t = left.next (); t != null; t = left.next ()) {
+                if (! remove.contains (keyOf (t, cPos))) return t;
+            } // for
+            return null;
+        } // next
+
+        public void close ()
+        {
+            if (compatible) left.close ();
+            remove = null;
+        } // close
+
+    } // Minus class
+
+    /************************************************************************************
+     * The Join operator equi-joins its inputs.  The right input is read into a hash table
+     * when opened and the left input is streamed through it, producing every match.
+     * Join attributes that differ in number or are missing from their input produce
+     * no tuples.
+     */
+    static class Join
+            extends Operator
+    {
+        private final Operator left;
+        private final Operator right;
+        private final int [] lPos;
+        private final int [] rPos;
+        private final boolean valid;
+        private Map <KeyType, List <Comparable []>> hTable;
+        private Comparable [] current;
+        private Iterator <Comparable []> matches;
+
+        Join (Operator _left, String [] attrs1, String [] attrs2, Operator _right)
+        {
+            super (ArrayUtil.concat (_left.attribute, rename (_left, _right)),
+                   ArrayUtil.concat (_left.domain, _right.domain), _left.key, _left.mapType);
+            left  = _left;
+            right = _right;
+            lPos  = left.cols (attrs1);
+            rPos  = right.cols (attrs2);
+            valid = lPos.length == rPos.length && Arrays.stream (lPos).allMatch (j -> j >= 0)
+                                               && Arrays.stream (rPos).allMatch (j -> j >= 0);
+            if (! valid) out.println ("join ERROR: invalid join attributes " + Arrays.toString (attrs1)
+                                      + " and " + Arrays.toString (attrs2));
+        } // constructor
+
+        private static String [] rename (Operator left, Operator right)
+        {
+            var attrs = new String [right.attribute.length];
+            for (var j = 0; j < attrs.length; j++) {
+                var a = right.attribute [j];
+                attrs [j] = (left.col (a) >= 0) ? a + "2" : a;
+            } // for
+            return attrs;
+        } // rename
+
+        public void open ()
+        {
+            if (! valid) return;
+            hTable = new HashMap <> ();
+            right.open ();
+            for (var u = right.next (); u != null; u = right.next ()) {
+                hTable.computeIfAbsent (keyOf (u, rPos), k -> new ArrayList <> ()).add (u);
+            } // for
+            right.close ();
+            left.open ();
+            matches = Collections.emptyIterator ();
+        } // open
+
+        public Comparable [] next ()
+        {
+            if (! valid) return null;
+            while (! matches.hasNext ()) {
+                current = left.next ();
+                if (current == null) return null;
+                var m = hTable.get (keyOf (current, lPos));
+                if (m != null) matches = m.iterator ();
+            } // while
+            return ArrayUtil.concat (current, matches.next ());
+        } // next
+
+        public void close ()
+        {
+            if (valid) left.close ();
+            hTable  = null;
+            current = null;
+        } // close
+
+    } // Join class
+
+} // Operator class
@@ -0,0 +1,224 @@
+package AppSlash.Code;
+/************************************************************************************
+ * @file RowIndex.java
+ */
+
+import java.util.*;
+
+/************************************************************************************
+ * The RowIndex class presents an index that maps keys to row ids, i.e., positions of
+ * the tuples in a table's tuple list, as a Map from keys to tuples.  Each tuple is
+ * fetched from the tuple list by its row id, so the same index works over an ArrayList,
+ * a ColumnList, a FileList or a MappedList, and a saved BpTreeMap index holds row ids
+ * rather than copies of the tuples.  This is a layer of indirection only: the underlying
+ * map (TreeMap, LinHashMap, BpTreeMap, ...) stores a boxed Integer per key, which takes
+ * as much heap as a tuple reference (see LongKeyIndex for primitive row ids).  Putting
+ * a tuple appends it to the tuple list.
+ * Views over a SortedMap of row ids are themselves SortedMaps (see of).
+ */
+public class RowIndex
+        extends AbstractMap <KeyType, Comparable []>
+{
+    /** The underlying map from keys to row ids.
+     */
+    final Map <KeyType, Integer> ids;
+
+    /** The tuple list the row ids refer to.
+     */
+    final List <Comparable []> tuples;
+
+    /********************************************************************************
+     * Construct a view of the map of row ids.
+     * @param _ids     the map from keys to row ids
+     * @param _tuples  the tuple list
+     */
+    private RowIndex (Map <KeyType, Integer> _ids, List <Comparable []> _tuples)
+    {
+        ids    = _ids;
+        tuples = _tuples;
+    } // constructor
+
+    /********************************************************************************
+     * Return a view of the map of row ids as a map to tuples, which is a SortedMap if
+     * the map of row ids is.
+     * @param ids     the map from keys to row ids
+     * @param tuples  the tuple list
+     * @return  the index view
+     */
+    public static RowIndex of (Map <KeyType, Integer> ids, List <Comparable []> tuples)
+    {
+        return (ids instanceof SortedMap <KeyType, Integer> sm) ? new Sorted (sm, tuples) : new RowIndex (ids, tuples);
+    } // of
+
+    /********************************************************************************
+     * Return the underlying map from keys to row ids.
+     */
+    public Map <KeyType, Integer> ids ()
+    {
+        return ids;
+    } // ids
+
+    /********************************************************************************
+     * Return the row id for the key.
+     * @param key  the key
+     * @return  the row id or -1 if the key is not indexed
+     */
+    public int row (KeyType key)
+    {
+        var r = ids.get (key);
+        return (r == null) ? -1 : r;
+    } // row
+
+    /********************************************************************************
+     * Given the key, fetch the tuple it indexes.
+     * @param key  the key used for look up
+     * @return  the tuple or null if not found
+     */
+    public Comparable [] get (Object key)
+    {
+        var r = ids.get (key);
+        return (r == null) ? null : tuples.get (r);
+    } // get
+
+    /********************************************************************************
+     * Return whether the key is indexed.
+     * @param key  the key to look for
+     */
+    public boolean containsKey (Object key)
+    {
+        return ids.containsKey (key);
+    } // containsKey
+
+    /********************************************************************************
+     * Index row r under the key.
+     * @param key  the key
+     * @param r    the row id
+     */
+    public void putRow (KeyType key, int r)
+    {
+        ids.put (key, r);
+    } // putRow
+
+    /********************************************************************************
+     * Append the tuple to the tuple list and index its row under the key.  A tuple
+     * already in the list is indexed with putRow instead.
+     * @param key  the key
+     * @param tup  the tuple to append
+     * @return  the tuple previously indexed under the key, or null if none
+     */
+    public Comparable [] put (KeyType key, Comparable [] tup)
+    {
+        tuples.add (tup);
+        var old = ids.put (key, tuples.size () - 1);
+        return (old == null) ? null : tuples.get (old);
+    } // put
+
+    /********************************************************************************
+     * Return the number of keys in the index.
+     */
+    public int size ()
+    {
+        return ids.size ();
+    } // size
+
+    /********************************************************************************
+     * Return a set view of the entries, fetching each tuple as it is visited.
+     * @return  the set view of the index
+     */
+    public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+    {
+        return new AbstractSet <Map.Entry <KeyType, Comparable []>> () {
+            public int size () { return ids.size (); }
+            public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+            {
+                var it = ids.entrySet ().iterator ();
+                return new Iterator <Map.Entry <KeyType, Comparable []>> () {
+                    public boolean hasNext () { return it.hasNext (); }
+                    public Map.Entry <KeyType, Comparable []> next ()
+                    {
+                        var e = it.next ();
+                        return new AbstractMap.SimpleImmutableEntry <> (e.getKey (), tuples.get (e.getValue ()));
+                    } // next
+                };
+            } // iterator
+        };
+    } // entrySet
+
+    /********************************************************************************
+     * This inner class is a RowIndex over a SortedMap of row ids; its range views are
+     * views over the corresponding ranges of that map.
+     */
+    private static final class Sorted
+            extends RowIndex
+            implements SortedMap <KeyType, Comparable []>
+    {
+        private final SortedMap <KeyType, Integer> sorted;
+
+        Sorted (SortedMap <KeyType, Integer> _ids, List <Comparable []> _tuples)
+        {
+            super (_ids, _tuples);
+            sorted = _ids;
+        } // constructor
+
+        public Comparator <? super KeyType> comparator ()              { return sorted.comparator (); }
+        public KeyType firstKey ()                                     { return sorted.firstKey (); }
+        public KeyType lastKey ()                                      { return sorted.lastKey (); }
+
+        public SortedMap <KeyType, Comparable []> subMap (KeyType from, KeyType to)
+        {
+            return new Sorted (sorted.subMap (from, to), tuples);
+        } // subMap
+
+        public SortedMap <KeyType, Comparable []> headMap (KeyType to)
+        {
+            return new Sorted (sorted.headMap (to), tuples);
+        } // headMap
+
+        public SortedMap <KeyType, Comparable []> tailMap (KeyType from)
+        {
+            return new Sorted (sorted.tailMap (from), tuples);
+        } // tailMap
+
+    } // Sorted inner class
+
+    /********************************************************************************
+     * This inner class is a posting list of row ids (for a secondary index), held in a
+     * growable int array and presented as a list of the tuples it refers to.
+     */
+    static final class RowList
+            extends AbstractList <Comparable []>
+            implements RandomAccess
+    {
+        private final List <Comparable []> tuples;
+        private int [] rows = new int [2];
+        private int    n    = 0;
+
+        RowList (List <Comparable []> _tuples)
+        {
+            tuples = _tuples;
+        } // constructor
+
+        /****************************************************************************
+         * Append row id r to the posting list.
+         * @param r  the row id
+         */
+        void addRow (int r)
+        {
+            if (n == rows.length) rows = Arrays.copyOf (rows, 2 * n);
+            rows [n++] = r;
+        } // addRow
+
+        public Comparable [] get (int i)
+        {
+            Objects.checkIndex (i, n);
+            return tuples.get (rows [i]);
+        } // get
+
+        public int size ()
+        {
+            return n;
+        } // size
+
+    } // RowList inner class
+
+} // RowIndex class
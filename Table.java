@@ -7,6 +7,8 @@ package AppSlash.Code;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -33,6 +35,31 @@ public class Table
      */
     private static int count = 0;
 
+    /** Memory budget (in bytes) for the build side of a hash join before spilling to disk.
+     */
+    private static long joinMemory = 64L << 20;
+
+    /** Maximum number of bytes in a String field of tables created in a FileList or
+     *  MappedList (which store fixed-size records).
+     */
+    private static int strBytes = FileList.STR_BYTES;
+
+    /** Maximum number of partitions created per hybrid hash join pass.
+     */
+    private static final int MAX_PARTS = 64;
+
+    /** Maximum recursion depth for re-partitioning spilled partitions.
+     */
+    private static final int MAX_LEVEL = 4;
+
+    /** Pool that ph_join runs on unless given one, created on first use.  It is kept
+     *  apart from the common ForkJoinPool so a large join cannot starve other work there.
+     */
+    private static class JoinPool
+    {
+        static final ForkJoinPool POOL = new ForkJoinPool (Runtime.getRuntime ().availableProcessors ());
+    } // JoinPool
+
     /** ClassProject.Table name.
      */
     private final String name;
@@ -56,33 +83,235 @@ public class Table
      */
     private final String [] key;
 
-    /** Index into tuples (maps key to tuple number).
+    /** Index into tuples (maps key to tuple number).  The index is not saved with the
+     *  table: after load it is rebuilt on first use (see index ()).
      */
-    private final Map <KeyType, Comparable []> index;
+    private transient volatile Map <KeyType, Comparable []> index;
 
-    /** The supported map types.
+    /** The map type of this table's primary index (may be changed by rebuildIndex).
      */
-    private enum MapType { NO_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP }
+    private volatile MapType iType = mType;
 
-    /** The map type to be used for indices.  Change as needed.
+    /** The supported map types (for the primary index and for secondary indexes).
+     *  BLINK_TREE_MAP and CONCURRENT_LINHASH_MAP are thread-safe variants whose lookups
+     *  never block, for tables looked up by key from many threads while being inserted
+     *  into.  Inserts are serialized (see insert), so only key lookups may run alongside
+     *  them: scans and the other operators read the tuple list, which is not thread-safe.
+     */
+    public enum MapType
+    {
+        NO_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP, BLINK_TREE_MAP, CONCURRENT_LINHASH_MAP;
+
+        /********************************************************************************
+         * Return the map type with the given name, either the name of the map class
+         * (e.g., "BpTreeMap", "LinHashMap", "TreeMap" or "NoMap") or of the constant
+         * (e.g., "BPTREE_MAP"), ignoring case.
+         *
+         * @param s  the name of the map type
+         * @return  the map type
+         */
+        public static MapType of (String s)
+        {
+            switch (s.replace ("_", "").toLowerCase ()) {
+            case "nomap", "none"        -> { return NO_MAP; }
+            case "treemap", "tree"      -> { return TREE_MAP; }
+            case "linhashmap", "linhash" -> { return LINHASH_MAP; }
+            case "bptreemap", "bptree"  -> { return BPTREE_MAP; }
+            case "blinktreemap", "blinktree" -> { return BLINK_TREE_MAP; }
+            case "concurrentlinhashmap", "concurrentlinhash" -> { return CONCURRENT_LINHASH_MAP; }
+            default -> throw new IllegalArgumentException ("unknown map type: " + s);
+            } // switch
+        } // of
+
+    } // MapType enum
+
+    /** The default map type for the indices of tables not given one.  Change as needed.
      */
     private static final MapType mType = MapType.BPTREE_MAP;
 
+    /** The order (maximum fanout) of B+Tree and B-link tree indices, large enough to keep
+     *  them shallow.
+     */
+    private static final int BPT_ORDER = 128;
+
+    /** Filename extension for tuple files of tables stored in a FileList
+     */
+    private static final String LST = ".lst";
+
+    /** Filename extension for tuple files of tables stored in a MappedList
+     */
+    private static final String MAP = ".map";
+
+    /** Filename extension for saved B+Tree index pages
+     */
+    private static final String IDX = ".idx";
+
+    /** Secondary indexes on (typically non-key) attributes: for each list of attributes,
+     *  a map from their values to the posting list of the row ids of the tuples having
+     *  those values (presented as a list of the tuples, see RowIndex.RowList).
+     */
+    private transient Map <String, Map <KeyType, List <Comparable []>>> secondary;
+
+    /** The supported list types for storing tuples.  FILE_LIST and MAPPED_LIST store
+     *  fixed-size records, so their String values may not exceed a set number of UTF-8
+     *  bytes (see setStringBytes).
+     */
+    public enum ListType { ARRAY_LIST, COLUMN_LIST, FILE_LIST, MAPPED_LIST }
+
+    /** The list type used to store this table's tuples.
+     */
+    private final ListType lType;
+
     /************************************************************************************
-     * Make a map (index) given the MapType.
+     * Make a list (tuple storage) given the ListType.  A FileList or MappedList keeps its
+     * records in the storage directory in a file named after the table.
+     *
+     * @param lt    the list type
+     * @param name  the name of the table
+     * @param dom   the attribute domains of the tuples to be stored
      */
-    private static Map <KeyType, Comparable []> makeMap ()
+    private static List <Comparable []> makeList (ListType lt, String name, Class [] dom)
     {
-        if (mType == MapType.TREE_MAP) {
+        if (lt == ListType.COLUMN_LIST) return new ColumnList (dom);
+        if (lt == ListType.FILE_LIST)   return new FileList (DIR + name + LST, dom, strBytes);
+        if (lt == ListType.MAPPED_LIST) return new MappedList (DIR + name + MAP, dom, strBytes);
+        return new ArrayList <> ();
+    } // makeList
+
+    /************************************************************************************
+     * Make a map (index) of this table's MapType.
+     */
+    private Map <KeyType, Comparable []> makeMap ()
+    {
+        return makeMap (iType, Comparable [].class);
+    } // makeMap
+
+    /************************************************************************************
+     * Make a map (index) of the given type with the given class of values.
+     *
+     * @param mt      the map type
+     * @param classV  the class of the values
+     */
+    private static <V> Map <KeyType, V> makeMap (MapType mt, Class <V> classV)
+    {
+        if (mt == MapType.TREE_MAP) {
             return new TreeMap<>();
-        } else if (mType == MapType.LINHASH_MAP) {
-            return new LinHashMap<>(KeyType.class, Comparable[].class);
-        } else if (mType == MapType.BPTREE_MAP) {
-            return new BpTreeMap<>(KeyType.class, Comparable[].class);
+        } else if (mt == MapType.LINHASH_MAP) {
+            return new LinHashMap<>(KeyType.class, classV);
+        } else if (mt == MapType.BPTREE_MAP) {
+            return new BpTreeMap<>(KeyType.class, classV, BPT_ORDER);
+        } else if (mt == MapType.BLINK_TREE_MAP) {
+            return new BLinkTreeMap<>(KeyType.class, classV, BPT_ORDER);
+        } else if (mt == MapType.CONCURRENT_LINHASH_MAP) {
+            return new ConcurrentLinHashMap<>(KeyType.class, classV);
         }
         return null;
     } // makeMap
 
+    /************************************************************************************
+     * Return the MapType of the given map (index).
+     *
+     * @param map  the map (null for no index)
+     * @return  the map type
+     */
+    private static MapType typeOf (Map <?, ?> map)
+    {
+        if (map == null)                  return MapType.NO_MAP;
+        if (map instanceof BpTreeMap)     return MapType.BPTREE_MAP;
+        if (map instanceof BLinkTreeMap)  return MapType.BLINK_TREE_MAP;
+        if (map instanceof LinHashMap)    return MapType.LINHASH_MAP;
+        if (map instanceof LongKeyIndex)  return MapType.LINHASH_MAP;
+        if (map instanceof RowIndex ri)   return typeOf (ri.ids ());
+        if (map instanceof ConcurrentLinHashMap) return MapType.CONCURRENT_LINHASH_MAP;
+        return MapType.TREE_MAP;
+    } // typeOf
+
+    /************************************************************************************
+     * Make a map (index) of the given type, holding the given entries.  A B+Tree index is
+     * bulk loaded bottom-up from the entries (stably) sorted by key, rather than built
+     * by inserting them one at a time; other maps have the entries put in order.  Either
+     * way, the last of several entries with the same key is kept.
+     *
+     * @param mt       the map type
+     * @param classV   the class of the values
+     * @param entries  the key-value entries for the index
+     */
+    private static <V> Map <KeyType, V> makeMap (MapType mt, Class <V> classV, List <Map.Entry <KeyType, V>> entries)
+    {
+        var map = makeMap (mt, classV);
+        if (map instanceof BpTreeMap <KeyType, V> bpt) {
+            entries.sort (Map.Entry.comparingByKey ());
+            bpt.bulkLoad (entries.iterator ());
+        } else if (map != null) {
+            for (var e : entries) map.put (e.getKey (), e.getValue ());
+        } // if
+        return map;
+    } // makeMap
+
+    /************************************************************************************
+     * Return the index entries (key -> row id) for the given tuples.
+     *
+     * @param tups  the tuples to index
+     * @param cols  the column positions of the key
+     * @return  the list of index entries
+     */
+    private static List <Map.Entry <KeyType, Integer>> rowEntries (List <Comparable []> tups, int [] cols)
+    {
+        var entries = new ArrayList <Map.Entry <KeyType, Integer>> (tups.size ());
+        var i = 0;
+        for (var t : tups) entries.add (Map.entry (new KeyType (extract (t, cols)), i++));
+        return entries;
+    } // rowEntries
+
+    /************************************************************************************
+     * Return the index, rebuilding it from the tuples if it has not been built yet (as is
+     * the case after the table is loaded).  The index maps keys to row ids (positions in
+     * the tuple list) and fetches the tuples from the list (see RowIndex), so it works
+     * the same over every ListType.
+     *
+     * @return  the index (null for MapType.NO_MAP)
+     */
+    private Map <KeyType, Comparable []> index ()
+    {
+        var idx = index;
+        return (idx != null || iType == MapType.NO_MAP) ? idx : buildIndex ();
+    } // index
+
+    /************************************************************************************
+     * Build the index from the tuples unless another thread has just done so.
+     *
+     * @return  the index
+     */
+    private synchronized Map <KeyType, Comparable []> buildIndex ()
+    {
+        if (index == null && iType != MapType.NO_MAP) {
+            var cols = match (key);
+            if (iType == MapType.LINHASH_MAP && LongKeyIndex.applies (domain, cols)) {
+                index = new LongKeyIndex (tuples, cols [0]);                 // single integral key
+            } else {
+                index = RowIndex.of (makeMap (iType, Integer.class, rowEntries (tuples, cols)), tuples);
+            } // if
+        } // if
+        return index;
+    } // buildIndex
+
+    /************************************************************************************
+     * Return the index for probing this table by key.  A table without an index
+     * (MapType.NO_MAP) gets a hash map from key to tuple, built for the caller's probes
+     * and not kept.
+     *
+     * @return  the index, or a temporary hash map over the tuples
+     */
+    private Map <KeyType, Comparable []> keyIndex ()
+    {
+        var idx = index ();
+        if (idx != null) return idx;
+        var cols = match (key);
+        var map  = new HashMap <KeyType, Comparable []> ();
+        for (var t : tuples) map.put (new KeyType (extract (t, cols)), t);
+        return map;
+    } // keyIndex
+
     //-----------------------------------------------------------------------------------
     // Constructors
     //-----------------------------------------------------------------------------------
@@ -96,18 +325,52 @@ public class Table
      * @param _key        the primary key
      */
     public Table (String _name, String [] _attribute, Class [] _domain, String [] _key)
+    {
+        this (_name, _attribute, _domain, _key, ListType.ARRAY_LIST);
+    } // primary constructor
+
+    /************************************************************************************
+     * Construct an empty table from the meta-data specifications, storing its tuples in
+     * the given type of list.
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _lType      the type of list to store the tuples in
+     */
+    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key, ListType _lType)
+    {
+        this (_name, _attribute, _domain, _key, _lType, mType);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the meta-data specifications, storing its tuples in
+     * the given type of list and indexing them with the given type of map.
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _lType      the type of list to store the tuples in
+     * @param _iType      the type of map for the primary index
+     */
+    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key, ListType _lType,
+                  MapType _iType)
     {
         name      = _name;
         attribute = _attribute;
         domain    = _domain;
         key       = _key;
-        tuples    = new ArrayList <> ();
-        index     = makeMap ();
-
-    } // primary constructor
+        lType     = _lType;
+        iType     = _iType;
+        tuples    = makeList (lType, name, domain);
+        index ();
+    } // constructor
 
     /************************************************************************************
-     * Constructs a table from the meta-data specifications and data in _tuples list.
+     * Constructs a table from the meta-data specifications and data in _tuples list.  The
+     * index is built over the tuples on first use.
      *
      * @param _name       the name of the relation
      * @param _attribute  the string containing attributes names
@@ -122,14 +385,17 @@ public class Table
         attribute = _attribute;
         domain = _domain;
         key = _key;
+        lType = ListType.ARRAY_LIST;
         tuples = _tuples;
-        index = makeMap();
+        index = null;
     } // constructor
 
 
 
     /************************************************************************************
      * Constructs a table from the meta-data specifications, data in _tuples list and index in _index.
+     * An index holding tuple references (rather than row ids, see RowIndex) only gives the
+     * type of map to use: the index is rebuilt over the row ids of the tuples on first use.
      *
      * @param _name       the name of the relation
      * @param _attribute  the string containing attributes names
@@ -146,8 +412,35 @@ public class Table
         attribute = _attribute;
         domain = _domain;
         key = _key;
+        lType = ListType.ARRAY_LIST;
+        iType = typeOf (_index);
         tuples = _tuples;
-        index = _index;
+        index = (_index instanceof RowIndex || _index instanceof LongKeyIndex) ? _index : null;
+    } // constructor
+
+    /************************************************************************************
+     * Construct a table over existing tuple storage (e.g., as read by TableFile), leaving
+     * the index to be built on first use.
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _lType      the type of list storing the tuples
+     * @param _iType      the type of map for the primary index (null for the default)
+     * @param _tuples     the list of tuples containing the data
+     */
+    Table (String _name, String [] _attribute, Class [] _domain, String [] _key, ListType _lType,
+           MapType _iType, List <Comparable []> _tuples)
+    {
+        name      = _name;
+        attribute = _attribute;
+        domain    = _domain;
+        key       = _key;
+        lType     = _lType;
+        iType     = (_iType == null) ? mType : _iType;
+        tuples    = _tuples;
+        index     = null;
     } // constructor
 
     /************************************************************************************
@@ -165,10 +458,109 @@ public class Table
         out.println ("DDL> create table " + name + " (" + attributes + ")");
     } // constructor
 
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, storing its tuples in
+     * the given type of list (e.g., ListType.COLUMN_LIST for columnar storage).
+     *
+     * @param _name       the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _lType      the type of list to store the tuples in
+     */
+    public Table (String _name, String attributes, String domains, String _key, ListType _lType)
+    {
+        this (_name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "), _lType);
+
+        out.println ("DDL> create table " + name + " (" + attributes + ") stored in " + lType);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, indexing its tuples
+     * with the named type of map (e.g., "BpTreeMap" for range-scanned tables or
+     * "LinHashMap" for point lookups).
+     *
+     * @param _name       the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param mapType     the name of the type of map for the primary index
+     */
+    public Table (String _name, String attributes, String domains, String _key, String mapType)
+    {
+        this (_name, attributes, domains, _key, ListType.ARRAY_LIST, MapType.of (mapType));
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, storing its tuples in
+     * the given type of list and indexing them with the given type of map.
+     *
+     * @param _name       the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _lType      the type of list to store the tuples in
+     * @param _iType      the type of map for the primary index
+     */
+    public Table (String _name, String attributes, String domains, String _key, ListType _lType,
+                  MapType _iType)
+    {
+        this (_name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "), _lType, _iType);
+
+        out.println ("DDL> create table " + name + " (" + attributes + ") stored in " + lType +
+                     " indexed by " + iType);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a table from a list of tuples, building its index on the key with the
+     * given type of map.  Used to materialize the results of operator pipelines.
+     *
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _tuples     the list of tuples containing the data
+     * @param _iType      the type of map for the index
+     * @return  the new table
+     */
+    static Table fromRows (String _name, String [] _attribute, Class [] _domain, String [] _key,
+                           List <Comparable []> _tuples, MapType _iType)
+    {
+        var tab = new Table (_name, _attribute, _domain, _key, ListType.ARRAY_LIST, _iType, _tuples);
+        tab.index ();
+        return tab;
+    } // fromRows
+
     //----------------------------------------------------------------------------------
     // Public Methods
     //----------------------------------------------------------------------------------
 
+    /************************************************************************************
+     * Return a scan operator over the tuples of this table, to start a pipeline of
+     * operators that produce their results one tuple at a time.
+     *
+     * #usage movie.scan ().select (t -> (Integer) t[movie.col("year")] < 1980).project ("title")
+     *
+     * @return  the scan operator
+     */
+    public Operator scan ()
+    {
+        return new Operator.Scan (attribute, domain, key, iType, tuples);
+    } // scan
+
+    /************************************************************************************
+     * Return a batch scan operator over the tuples of this table, to start a pipeline of
+     * vectorized operators that pass batches of column vectors.
+     *
+     * #usage movie.batchScan ().filter ("year", "<", 1980).project ("title")
+     *
+     * @return  the batch scan operator
+     */
+    public BatchOperator batchScan ()
+    {
+        return new BatchOperator.Scan (attribute, domain, key, iType, tuples);
+    } // batchScan
+
     /************************************************************************************
      * Project the tuples onto a lower dimension by keeping only the given attributes.
      * Check whether the original key is included in the projection.
@@ -188,32 +580,75 @@ public class Table
         List<Comparable[]> rows = new ArrayList<>();
 
         //  T O   B E   I M P L E M E N T E D
-        Map<KeyType, Comparable[]> new_index = makeMap();
+        var cols = match(attrs);
+        Set<KeyType> seen = new HashSet<>();                        // projected tuples produced so far
         try {
             rows = tuples.stream()
-                    .map(t -> {
-                        var proj_Tuple = Arrays.stream(attrs)
-                                .map(column -> t[col(column)])
-                                .collect(Collectors.toList()).toArray(new Comparable[attrs.length]);
-                        if (new_index.get(new KeyType(proj_Tuple)) == null){
-                            var keyValue = new Comparable[newKey.length];
-                            var cols = match(newKey);
-                            for (var j = 0; j < keyValue.length; j++) keyValue[j] = t[cols[j]];
-                            if (mType != MapType.NO_MAP) new_index.put(new KeyType(keyValue), proj_Tuple);
-                            return proj_Tuple;
-                        }
-                        return new Comparable[attrs.length];
-                    })
-                    .filter(t -> t[0] != null)
+                    .map(t -> extract(t, cols))
+                    .filter(proj_Tuple -> seen.add(new KeyType(proj_Tuple)))
                     .collect(Collectors.toList());
         } catch (Exception e) {
             out.println("Invalid Columns in projection. Please recheck the column name");
         }
 
         //rows = tuples.stream().map(eachTup -> extract(eachTup, attrs)).collect(Collectors.toList());
-        return new Table(name + count++, attrs, colDomain, newKey, rows, new_index);
+        return new Table(name + count++, attrs, colDomain, newKey, ListType.ARRAY_LIST, iType, rows);
     } // project
 
+    /************************************************************************************
+     * Select the tuples whose key lies between the keys from and to.  The bounds may be
+     * prefixes of a composite key (e.g., just the title of "title year"), in which case
+     * only the leading key attributes are compared, and a null bound is unbounded.  With
+     * no inclusive flags both bounds are inclusive (as in BETWEEN); one flag applies to
+     * both bounds and two flags apply to from and to respectively.  A sorted index
+     * (TreeMap or BpTreeMap) is used to visit only the qualifying tuples; otherwise
+     * every tuple is checked.
+     *
+     * #usage movie.select (new KeyType ("Star_Wars"), new KeyType ("Star_Wars_2"))
+     *
+     * @param from       the lower bound on the key (null for none)
+     * @param to         the upper bound on the key (null for none)
+     * @param inclusive  whether the bounds are inclusive
+     * @return  a table with the tuples whose keys lie in the range
+     */
+    public Table select (KeyType from, KeyType to, boolean ... inclusive)
+    {
+        out.println ("RA> " + name + ".select (" + from + " .. " + to + ")");
+
+        var loIn = inclusive.length == 0 || inclusive [0];
+        var hiIn = inclusive.length == 0 || inclusive [inclusive.length - 1];
+        var rows = new ArrayList <Comparable []> ();
+        var idx  = index ();
+
+        if (idx instanceof SortedMap <KeyType, Comparable []> sorted && idx.size () == tuples.size ()) {
+            var range = (from == null) ? sorted : sorted.tailMap (from);  // first key with prefix >= from
+            for (var e : range.entrySet ()) {
+                var k = e.getKey ();
+                if (to != null) {
+                    var c = k.comparePrefix (to);
+                    if (c > 0 || c == 0 && ! hiIn) break;
+                } // if
+                if (loIn || from == null || k.comparePrefix (from) != 0) rows.add (e.getValue ());
+            } // for
+        } else {
+            var cols = match (key);
+            for (var t : tuples) {
+                var k = new KeyType (extract (t, cols));
+                if (from != null) {
+                    var c = k.comparePrefix (from);
+                    if (c < 0 || c == 0 && ! loIn) continue;
+                } // if
+                if (to != null) {
+                    var c = k.comparePrefix (to);
+                    if (c > 0 || c == 0 && ! hiIn) continue;
+                } // if
+                rows.add (t);
+            } // for
+        } // if
+
+        return fromRows (name + count++, attribute, domain, key, rows, iType);
+    } // select
+
     /************************************************************************************
      * Select the tuples satisfying the given predicate (Boolean function).
      *
@@ -226,11 +661,62 @@ public class Table
     {
         out.println ("RA> " + name + ".select (" + predicate + ")");
 
-        return new Table (name + count++, attribute, domain, key,
+        return new Table (name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType,
                 tuples.stream ().filter (t -> predicate.test (t))
                         .collect (Collectors.toList ()));
     } // select
 
+    /************************************************************************************
+     * Select the tuples whose value for the given attribute compares to a constant as
+     * required.  Evaluated in vectorized batches (see BatchOperator), so numeric columns
+     * are compared as primitive vectors rather than through a boxed predicate per tuple.
+     * If there is a secondary index on the attribute, equality is answered from its
+     * posting lists, as are ranges when the index is sorted (TreeMap or BpTreeMap).
+     *
+     * #usage movie.select ("year", "<", 1980)
+     *
+     * @param attr   the attribute to compare
+     * @param op     the comparison operator: ==, !=, <, <=, > or >= (any other operator is
+     *               rejected with an IllegalArgumentException)
+     * @param value  the constant to compare with
+     * @return  a table with tuples satisfying the comparison
+     */
+    public Table select (String attr, String op, Comparable value)
+    {
+        out.println ("RA> " + name + ".select (" + attr + " " + op + " " + value + ")");
+
+        var cmp = BatchOperator.Cmp.parse (op);                         // rejects unknown operators
+        var sec = secondaryIndex (new String [] { attr });
+        var j   = col (attr);
+        if (sec != null && j >= 0 && value != null && value.getClass () == domain [j]) {
+            var v    = new KeyType (value);
+            var rows = new ArrayList <Comparable []> ();
+            if (cmp == BatchOperator.Cmp.EQ) {
+                var list = sec.get (v);
+                if (list != null) rows.addAll (list);
+                return fromRows (name + count++, attribute, domain, key, rows, iType);
+            } // if
+            if (sec instanceof SortedMap <KeyType, List <Comparable []>> sorted && cmp != BatchOperator.Cmp.NE) {
+                var range = switch (cmp) {
+                    case LT, LE -> sorted.headMap (v);
+                    case GT, GE -> sorted.tailMap (v);
+                    case EQ, NE -> throw new IllegalStateException ("not a range comparison: " + op);
+                };
+                for (var list : range.values ()) rows.addAll (list);
+                if (cmp == BatchOperator.Cmp.LE || cmp == BatchOperator.Cmp.GT) {   // headMap excludes v, tailMap includes it
+                    var list = sec.get (v);
+                    if (list != null) {
+                        if (cmp == BatchOperator.Cmp.LE) rows.addAll (list);
+                        else                             rows.subList (0, list.size ()).clear ();
+                    } // if
+                } // if
+                return fromRows (name + count++, attribute, domain, key, rows, iType);
+            } // if
+        } // if
+
+        return batchScan ().filter (attr, op, value).materialize (name + count++);
+    } // select
+
     /************************************************************************************
      * Select the tuples satisfying the given key predicate (key = value).  Use an index
      * (Map) to retrieve the tuple with the given key value.
@@ -245,17 +731,18 @@ public class Table
         List<Comparable[]> rows = new ArrayList<>();
 
         //  T O   B E   I M P L E M E N T E D
-        Map<KeyType, Comparable[]> newindex = makeMap();
-        var resRows = index.get(keyVal);
-        if (resRows != null) {
-            rows.add(resRows);
-            var keyValue = new Comparable[key.length];
+        var idx = index();
+        Comparable[] resRows = null;
+        if (idx != null) resRows = idx.get(keyVal);
+        else {                                                      // no index (MapType.NO_MAP): scan
             var cols = match(key);
-            for (var j = 0; j < keyValue.length; j++) keyValue[j] = resRows[cols[j]];
-            if (mType != MapType.NO_MAP) newindex.put(new KeyType(keyValue), resRows);
-        } else
+            for (var t : tuples) if (new KeyType(extract(t, cols)).equals(keyVal)) { resRows = t; break; }
+        } // if
+        if (resRows != null)
+            rows.add(resRows);
+        else
             out.println("No row with " + keyVal.toString() + " found in the table");
-        return new Table(name + count++, attribute, domain, key, rows, newindex);
+        return new Table(name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType, rows);
     } // select
 
     /************************************************************************************
@@ -270,26 +757,21 @@ public class Table
     public Table union(Table table2) {
         out.println("RA> " + name + ".union (" + table2.name + ")");
         if (!compatible(table2))
-            return new Table(name + count++, attribute, domain, key, new ArrayList<>());
+            return new Table(name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType,
+                    new ArrayList<>());
 
         //  T O   B E   I M P L E M E N T E D
-        Map<KeyType, Comparable[]> newindex = makeMap();
-        List<Comparable[]> rows = tuples.stream().map(resRow -> {
-            var keyValue = new Comparable[key.length];
-            var cols = match(key);
-            for (var j = 0; j < keyValue.length; j++) keyValue[j] = resRow[cols[j]];
-            if (mType != MapType.NO_MAP) newindex.put(new KeyType(keyValue), resRow);
-            return resRow;
-        }).collect(Collectors.toList());
-        rows.addAll(table2.tuples.stream().filter(eachTup -> {
-            var keyVal1 = new Comparable[table2.key.length];
-            var cols = match(table2.key);
-            for (var j = 0; j < keyVal1.length; j++) keyVal1[j] = eachTup[cols[j]];
-            var existRow = newindex.get(new KeyType(keyVal1));
-            newindex.putIfAbsent(new KeyType(keyVal1),eachTup);
-            return existRow == null;
-        }).collect(Collectors.toList()));
-        return new Table(name + count++, attribute, domain, key, rows, newindex);
+        Set<KeyType> seen = new HashSet<>();                        // keys of the tuples in the result
+        List<Comparable[]> rows = new ArrayList<>(tuples);
+        var cols = match(key);
+        for (var resRow : tuples) seen.add(new KeyType(extract(resRow, cols)));
+        var probe = new KeyType.Probe(match(table2.key));               // reused for every tuple of table2
+        for (var eachTup : table2.tuples) {
+            if (seen.contains(probe.of(eachTup))) continue;
+            seen.add(probe.copy());
+            rows.add(eachTup);
+        } // for
+        return new Table(name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType, rows);
     } // union
 
     /************************************************************************************
@@ -304,40 +786,27 @@ public class Table
 
     public Table minus(Table table2) {
         out.println("RA> " + name + ".minus (" + table2.name + ")");
-        if (!compatible(table2)) return new Table(name + count++, attribute, domain, key, new ArrayList<>());
+        if (!compatible(table2)) return new Table(name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType,
+                                                  new ArrayList<>());
 
         List<Comparable[]> rows = new ArrayList<>();
 
         //  T O   B E   I M P L E M E N T E D
-        Map<KeyType, Comparable[]> newindex = makeMap();
         if (Arrays.equals(this.key,table2.key)){
-            rows = tuples.stream().filter(eachTup -> {
-                var matched = false;
-                var keyval = new Comparable[this.key.length];
-                var cols = match(this.key);
-                for (var j = 0; j < keyval.length; j++) keyval[j] = eachTup[cols[j]];
-                var Tuple2 = table2.index.get(new KeyType(keyval));
-                if (Tuple2 != null)
-                    matched=true;
-                if (!matched){
-                    if (mType != MapType.NO_MAP) newindex.put(new KeyType(keyval), eachTup);
-                    return true;
-                }
-                return false;
-            }).collect(Collectors.toList());
+            var index2 = table2.keyIndex();
+            var probe  = new KeyType.Probe(match(this.key));           // reused for every tuple
+            for (var eachTup : tuples) {
+                if (! index2.containsKey(probe.of(eachTup))) rows.add(eachTup);
+            } // for
         }
         else{
             rows = tuples.stream().filter(eachTup -> {
                 int n = table2.tuples.size();
                 for (int i = 0; i < n; i++) if (!Arrays.equals(eachTup, table2.tuples.get(i))) return true;
-                var keyValue = new Comparable[key.length];
-                var cols = match(key);
-                for (var j = 0; j < keyValue.length; j++) keyValue[j] = eachTup[cols[j]];
-                if (mType != MapType.NO_MAP) newindex.put(new KeyType(keyValue), eachTup);
                 return false;
             }).collect(Collectors.toList());
         }
-        return new Table(name + count++, attribute, domain, key, rows, newindex);
+        return new Table(name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType, rows);
     } // minus
 
     /************************************************************************************
@@ -366,7 +835,7 @@ public class Table
         Map<KeyType, Comparable[]> newindex = makeMap();
         if (t_attrs.length != u_attrs.length) {
             out.println("Invalid join keys");
-            return new Table(name + count++, attribute, domain, key, rows);
+            return new Table(name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType, rows);
         }
 
         rows = tuples.stream().map(eachTup ->
@@ -400,12 +869,14 @@ public class Table
             for (int i = 0; i < matchingAttributes.length; i++) newAttrs[i] = table2.attribute[matchingAttributes[i]] + "2";
 
         return new Table(name + count++, ArrayUtil.concat(attribute, newAttrs),
-                ArrayUtil.concat(domain, table2.domain), key, rows);
+                ArrayUtil.concat(domain, table2.domain), key, ListType.ARRAY_LIST, iType, rows);
     } // join
 
     /************************************************************************************
      * Join this table and table2 by performing an "equi-join".  Same as above, but implemented
-     * using an Index Join algorithm.
+     * using an Index Join algorithm.  When attribute2 is not the primary key of table2, a
+     * secondary index on attribute2 (see createIndex) is probed, emitting a result for
+     * every tuple in the matching posting list; without one, a hash join is used.
      *
      * @param attribute1  the attributes of this table to be compared (Foreign Key)
      * @param attribute2  the attributes of table2 to be compared (Primary Key)
@@ -418,21 +889,39 @@ public class Table
                 + table2.name + ")");
 
         var t_attrs = attribute1.split(" ");
+        var u_attrs = attribute2.split(" ");
+        var onKey   = Arrays.equals(u_attrs, table2.key);
+        var sec     = onKey ? null : table2.secondaryIndex(u_attrs);
+        if (! onKey && sec == null) return h_join(attribute1, attribute2, table2);
         List<Comparable[]> rows;
 
-        Map<KeyType, Comparable[]> newindex = makeMap();
-        rows = tuples.stream().map(eachTup ->
-        {
-            var keyvalue = new Comparable[t_attrs.length];
-            var cols = match(t_attrs);
-            for (var j = 0; j < keyvalue.length; j++) keyvalue[j] = eachTup[cols[j]];
-            var Tuple2 = table2.index.get(new KeyType(keyvalue));
-            if (Tuple2 != null){
-                if (mType != MapType.NO_MAP) newindex.put(new KeyType(keyvalue), eachTup);
-                return ArrayUtil.concat(eachTup,Tuple2);
-            }
-            return eachTup;
-        }).filter(eachTup -> eachTup.length != tuples.get(0).length).collect(Collectors.toList());
+        if (sec != null) {
+            rows = new ArrayList<>();
+            var probe = new KeyType.Probe(match(t_attrs));              // reused for every tuple
+            for (var eachTup : tuples) {
+                var matches = sec.get(probe.of(eachTup));
+                if (matches == null) continue;
+                for (var Tuple2 : matches) rows.add(ArrayUtil.concat(eachTup, Tuple2));
+            } // for
+        } else if (table2.index() instanceof LongKeyIndex lk && t_attrs.length == 1) {
+            rows = new ArrayList<>();                               // probe with primitive keys
+            var c = match(t_attrs)[0];
+            for (var eachTup : tuples) {
+                if (! LongKeyIndex.isIntegral(eachTup[c])) continue;
+                var Tuple2 = lk.get(((Number) eachTup[c]).longValue());
+                if (Tuple2 == null) continue;
+                rows.add(ArrayUtil.concat(eachTup, Tuple2));
+            } // for
+        } else {
+            rows = new ArrayList<>();
+            var index2 = table2.keyIndex();
+            var probe  = new KeyType.Probe(match(t_attrs));             // reused for every tuple
+            for (var eachTup : tuples) {
+                var Tuple2 = index2.get(probe.of(eachTup));
+                if (Tuple2 == null) continue;
+                rows.add(ArrayUtil.concat(eachTup, Tuple2));
+            } // for
+        } // if
 
         //Processing duplicate attribute names
         var matchedAttributes = match(table2.attribute);
@@ -450,7 +939,7 @@ public class Table
             for (int i = 0; i < matchedAttributes.length; i++) newAttributes[i] = table2.attribute[matchedAttributes[i]] + "2";
 
         return new Table(name + count++, ArrayUtil.concat(attribute, newAttributes),
-                ArrayUtil.concat(domain, table2.domain), key, rows, newindex);
+                ArrayUtil.concat(domain, table2.domain), key, ListType.ARRAY_LIST, iType, rows);
     } // i_join
 
 
@@ -463,7 +952,18 @@ public class Table
 
     /************************************************************************************
      * Join this table and table2 by performing an "equi-join".  Same as above, but implemented
-     * using a Hash Join algorithm.
+     * using a Hash Join algorithm.  The hash table is built on the smaller of the two
+     * inputs and probed with the larger one; every matching pair is emitted.  When the
+     * build side is estimated to exceed the join memory budget (see setJoinMemory), a
+     * hybrid hash join is used: both inputs are partitioned into spill files under the
+     * storage directory, the first partition is joined in memory and the remaining
+     * partition pairs are joined recursively.  The budget bounds the build side only: the
+     * joined rows are still collected in one in-memory list.  If spilling fails, an
+     * UncheckedIOException is thrown rather than joining in memory over the budget.
+     * When joining on a single String attribute that both tables store dictionary-coded
+     * with a shared dictionary (see shareDictionary), the int codes are hashed instead.
+     *
+     * #usage movie.h_join ("studioName", "name", studio)
      *
      * @param attributes1  the attributes of this table to be compared (Foreign Key)
      * @param attributes2  the attributes of table2 to be compared (Primary Key)
@@ -472,9 +972,211 @@ public class Table
      */
     public Table h_join (String attributes1, String attributes2, Table table2)
     {
-        return null;
+        out.println ("RA> " + name + ".h_join (" + attributes1 + ", " + attributes2 + ", "
+                + table2.name + ")");
+
+        var t_attrs = attributes1.split (" ");
+        var u_attrs = attributes2.split (" ");
+        List <Comparable []> rows = new ArrayList <> ();
+
+        if (t_attrs.length != u_attrs.length) {
+            out.println ("Invalid join keys");
+            return new Table (name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType, rows);
+        } // if
+
+        var t_cols = match (t_attrs);
+        var u_cols = table2.match (u_attrs);
+
+        // build the hash table on the smaller input and probe it with the larger one
+        var buildLeft = tuples.size () <= table2.tuples.size ();
+        var build     = buildLeft ? tuples : table2.tuples;
+        var probe     = buildLeft ? table2.tuples : tuples;
+        var b_cols    = buildLeft ? t_cols : u_cols;
+        var p_cols    = buildLeft ? u_cols : t_cols;
+
+        var dict       = (t_cols.length == 1) ? sharedDictionary (t_cols [0], table2, u_cols [0]) : null;
+        var buildBytes = estimateBytes (build);
+        if (dict != null) {
+            codeJoin ((ColumnList) build, b_cols [0], (ColumnList) probe, p_cols [0], buildLeft, dict.size (), rows);
+        } else if (buildBytes <= joinMemory) {
+            hashJoin (build, probe, b_cols, p_cols, buildLeft, rows);
+        } else {
+            try {
+                hybridJoin (build, probe, buildBytes, b_cols, p_cols, buildLeft, 0, rows);
+            } catch (IOException ex) {
+                throw new UncheckedIOException ("h_join: spilling under " + DIR + " failed", ex);
+            } // try
+        } // if
+
+        return new Table (name + count++, ArrayUtil.concat (attribute, disambiguate (table2)),
+                ArrayUtil.concat (domain, table2.domain), key, ListType.ARRAY_LIST, iType, rows);
     } // h_join
 
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join".  Same as above, but implemented
+     * using a Parallel Partitioned Hash Join algorithm split for the number of available cores.
+     *
+     * #usage movie.ph_join ("studioName", "name", studio)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table ph_join (String attributes1, String attributes2, Table table2)
+    {
+        return ph_join (attributes1, attributes2, table2, Runtime.getRuntime ().availableProcessors ());
+    } // ph_join
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join" using a Parallel Partitioned
+     * Hash Join algorithm.  Both inputs are split into chunks that are radix-partitioned
+     * (on the hash of their join attributes) in parallel on a ForkJoinPool dedicated to
+     * ph_join (not the common pool, so a large join cannot starve other tasks).  Each
+     * partition is then built and probed by its own task into its own result list, and the
+     * lists are concatenated, so no shared state is locked.  The inputs are read from
+     * several threads at once, so their tuple lists must support concurrent reads.
+     *
+     * #usage movie.ph_join ("studioName", "name", studio, 4)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @param parallelism  the number of chunks each input is split into (at least 1)
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table ph_join (String attributes1, String attributes2, Table table2, int parallelism)
+    {
+        return ph_join (attributes1, attributes2, table2, parallelism, JoinPool.POOL);
+    } // ph_join
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join".  Same as above, but the
+     * partitioning, build and probe tasks run on the given pool, so that callers can
+     * bound or isolate the threads a join uses.
+     *
+     * #usage movie.ph_join ("studioName", "name", studio, 4, pool)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @param parallelism  the number of chunks each input is split into (at least 1)
+     * @param pool         the pool to run the join tasks on
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table ph_join (String attributes1, String attributes2, Table table2, int parallelism, ForkJoinPool pool)
+    {
+        if (parallelism < 1) throw new IllegalArgumentException ("ph_join: parallelism must be at least 1, not " + parallelism);
+        if (pool == null) throw new IllegalArgumentException ("ph_join: pool must not be null");
+        out.println ("RA> " + name + ".ph_join (" + attributes1 + ", " + attributes2 + ", "
+                + table2.name + ", " + parallelism + ")");
+
+        var t_attrs = attributes1.split (" ");
+        var u_attrs = attributes2.split (" ");
+        List <Comparable []> rows = new ArrayList <> ();
+
+        if (t_attrs.length != u_attrs.length) {
+            out.println ("Invalid join keys");
+            return new Table (name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType, rows);
+        } // if
+
+        var t_cols = match (t_attrs);
+        var u_cols = table2.match (u_attrs);
+
+        var buildLeft = tuples.size () <= table2.tuples.size ();
+        var build     = buildLeft ? tuples : table2.tuples;
+        var probe     = buildLeft ? table2.tuples : tuples;
+        var b_cols    = buildLeft ? t_cols : u_cols;
+        var p_cols    = buildLeft ? u_cols : t_cols;
+
+        var nParts = Integer.highestOneBit (Math.max (1, 4 * parallelism - 1)) << 1;  // power of 2 >= 4 * parallelism
+        var bChunks = partitionChunks (pool, build, b_cols, nParts, parallelism);
+        var pChunks = partitionChunks (pool, probe, p_cols, nParts, parallelism);
+
+        var tasks = new ArrayList <ForkJoinTask <List <Comparable []>>> (nParts);
+        for (var i = 0; i < nParts; i++) {
+            var part = i;
+            tasks.add (pool.submit (() -> {
+                var hTable = new HashMap <KeyType, List <Comparable []>> ();
+                for (var chunk : bChunks) {
+                    for (var e : chunk.get (part)) {
+                        hTable.computeIfAbsent (e.getKey (), k -> new ArrayList <> ()).add (e.getValue ());
+                    } // for
+                } // for
+                var partRows = new ArrayList <Comparable []> ();
+                for (var chunk : pChunks) {
+                    for (var e : chunk.get (part)) {
+                        var matches = hTable.get (e.getKey ());
+                        if (matches == null) continue;
+                        var p = e.getValue ();
+                        for (var b : matches) partRows.add (buildLeft ? ArrayUtil.concat (b, p) : ArrayUtil.concat (p, b));
+                    } // for
+                } // for
+                return partRows;
+            }));
+        } // for
+
+        for (var task : tasks) rows.addAll (task.join ());
+
+        return new Table (name + count++, ArrayUtil.concat (attribute, disambiguate (table2)),
+                ArrayUtil.concat (domain, table2.domain), key, ListType.ARRAY_LIST, iType, rows);
+    } // ph_join
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join".  Same as above, but implemented
+     * using a Sort-Merge Join algorithm.  Each input is sorted on its join attributes, unless
+     * the join attributes are its primary key and its index is sorted (TreeMap or BpTreeMap),
+     * in which case the tuples are taken from the index in key order.  The sorted inputs are
+     * then merged, pairing up runs of equal keys on both sides.
+     *
+     * #usage movie.sm_join ("studioName", "name", studio)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table sm_join (String attributes1, String attributes2, Table table2)
+    {
+        out.println ("RA> " + name + ".sm_join (" + attributes1 + ", " + attributes2 + ", "
+                + table2.name + ")");
+
+        var t_attrs = attributes1.split (" ");
+        var u_attrs = attributes2.split (" ");
+        List <Comparable []> rows = new ArrayList <> ();
+
+        if (t_attrs.length != u_attrs.length) {
+            out.println ("Invalid join keys");
+            return new Table (name + count++, attribute, domain, key, ListType.ARRAY_LIST, iType, rows);
+        } // if
+
+        var left  = sortedOn (t_attrs);
+        var right = table2.sortedOn (u_attrs);
+
+        var i = 0;
+        var j = 0;
+        while (i < left.size () && j < right.size ()) {
+            var k   = left.get (i).getKey ();
+            var cmp = k.compareTo (right.get (j).getKey ());
+            if (cmp < 0) { i++; continue; }
+            if (cmp > 0) { j++; continue; }
+
+            var iEnd = i + 1;                                            // find the runs of equal keys
+            while (iEnd < left.size () && k.compareTo (left.get (iEnd).getKey ()) == 0) iEnd++;
+            var jEnd = j + 1;
+            while (jEnd < right.size () && k.compareTo (right.get (jEnd).getKey ()) == 0) jEnd++;
+
+            for (var a = i; a < iEnd; a++) {
+                for (var b = j; b < jEnd; b++) rows.add (ArrayUtil.concat (left.get (a).getValue (), right.get (b).getValue ()));
+            } // for
+            i = iEnd;
+            j = jEnd;
+        } // while
+
+        return new Table (name + count++, ArrayUtil.concat (attribute, disambiguate (table2)),
+                ArrayUtil.concat (domain, table2.domain), key, ListType.ARRAY_LIST, iType, rows);
+    } // sm_join
+
     /************************************************************************************
      * Join this table and table2 by performing an "natural join".  Tuples from both tables
      * are compared requiring common attributes to be equal.  The duplicate column is also
@@ -517,7 +1219,8 @@ public class Table
         var newAttributes = Arrays.stream(ArrayUtil.concat(attribute, table2.attribute)).distinct().collect(Collectors.toList())
                 .toArray(new String[attribute.length + table2.attribute.length - c_attributes.length]);
 
-        return new Table (name + count++, newAttributes, ArrayUtil.concat (domain, table2.domain), key, row);
+        return new Table (name + count++, newAttributes, ArrayUtil.concat (domain, table2.domain), key,
+                          ListType.ARRAY_LIST, iType, row);
     } // join
     /************************************************************************************
      * Return the column position for the given attribute name.
@@ -535,14 +1238,15 @@ public class Table
     } // col
 
     /************************************************************************************
-     * Insert a tuple to the table.
+     * Insert a tuple to the table.  Inserts are synchronized, so that the tuple's row id
+     * is the position it was appended at, even when several threads insert at once.
      *
      * #usage movie.insert ("'Star_Wars'", 1977, 124, "T", "Fox", 12345)
      *
      * @param tup  the array of attribute values forming the tuple
      * @return  whether insertion was successful
      */
-    public boolean insert (Comparable [] tup)
+    public synchronized boolean insert (Comparable [] tup)
     {
         out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
 
@@ -551,13 +1255,165 @@ public class Table
             var keyVal = new Comparable [key.length];
             var cols   = match (key);
             for (var j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
-            if (mType != MapType.NO_MAP) index.put (new KeyType(keyVal), tup);
+            var row    = tuples.size () - 1;
+            if (index () instanceof LongKeyIndex lk)  lk.put (((Number) keyVal [0]).longValue (), row);
+            else if (index () instanceof RowIndex ri) ri.putRow (new KeyType(keyVal), row);
+            else if (iType != MapType.NO_MAP)         index ().put (new KeyType(keyVal), tup);
+            postSecondary (tup, row);
             return true;
         } else{
             return false;
         } // if
     } // insert
 
+    /************************************************************************************
+     * Rebuild the primary index of this table using the given kind of map (MapType.NO_MAP
+     * drops it), e.g., to move a table used mostly for point lookups to a LinHashMap.
+     *
+     * #usage student.rebuildIndex (Table.MapType.LINHASH_MAP)
+     *
+     * @param kind  the kind of map to use for the primary index
+     */
+    public synchronized void rebuildIndex (MapType kind)
+    {
+        out.println ("DDL> rebuild index on " + name + " using " + kind);
+
+        iType = kind;
+        index = null;
+        index ();
+    } // rebuildIndex
+
+    /************************************************************************************
+     * Return the kind of map used for the primary index of this table.
+     *
+     * @return  the map type
+     */
+    public MapType mapType ()
+    {
+        return iType;
+    } // mapType
+
+    /************************************************************************************
+     * Create a secondary index of the given kind on the given attributes, replacing any
+     * existing index on them (MapType.NO_MAP just drops it).  Since the attributes need
+     * not form a key, the index maps their values to posting lists of all the tuples
+     * having those values.  The index is kept up to date by insert and is used by the
+     * comparison select and by i_join when joining on these attributes.  Secondary
+     * indexes are not saved with the table.
+     *
+     * #usage student.createIndex ("name", Table.MapType.BPTREE_MAP)
+     *
+     * @param attributes  the attributes to index
+     * @param kind        the kind of map to use for the index
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void createIndex (String attributes, MapType kind)
+    {
+        out.println ("DDL> create index on " + name + " (" + attributes + ") using " + kind);
+
+        var attrs = attributes.split (" ");
+        var cols  = match (attrs);
+        for (var j = 0; j < cols.length; j++) {
+            if (cols [j] < 0) {
+                out.println ("createIndex ERROR: " + attrs [j] + " is not an attribute of " + name);
+                return;
+            } // if
+        } // for
+        var attrKey = String.join (" ", attrs);
+        if (secondary == null) secondary = new HashMap <> ();
+        secondary.remove (attrKey);
+        if (kind == MapType.NO_MAP) return;
+
+        var groups = new LinkedHashMap <KeyType, List <Comparable []>> ();
+        var i = 0;
+        for (var t : tuples) {
+            var list = groups.computeIfAbsent (new KeyType (extract (t, cols)), k -> new RowIndex.RowList (tuples));
+            ((RowIndex.RowList) list).addRow (i++);
+        } // for
+        Class <List <Comparable []>> classV = (Class) List.class;
+        secondary.put (attrKey, makeMap (kind, classV, new ArrayList <> (groups.entrySet ())));
+    } // createIndex
+
+    /************************************************************************************
+     * Return the secondary index on exactly the given attributes, or null if there is none.
+     *
+     * @param attrs  the indexed attributes
+     * @return  the secondary index (values -> posting list of tuples)
+     */
+    private Map <KeyType, List <Comparable []>> secondaryIndex (String [] attrs)
+    {
+        return (secondary == null) ? null : secondary.get (String.join (" ", attrs));
+    } // secondaryIndex
+
+    /************************************************************************************
+     * Add tuple tup, stored at the given row, to the posting lists of every secondary index.
+     *
+     * @param tup  the tuple that was inserted
+     * @param row  the row id of the tuple
+     */
+    private void postSecondary (Comparable [] tup, int row)
+    {
+        if (secondary == null) return;
+        for (var e : secondary.entrySet ()) {
+            var k    = new KeyType (extract (tup, match (e.getKey ().split (" "))));
+            var list = e.getValue ().get (k);
+            if (list == null) e.getValue ().put (k, list = new RowIndex.RowList (tuples));
+            ((RowIndex.RowList) list).addRow (row);
+        } // for
+    } // postSecondary
+
+    /************************************************************************************
+     * Make the String attribute attr of this table use the same dictionary as attribute
+     * attr2 of table2, so that equi-joins between the two compare dictionary codes.  Both
+     * tables must be stored in a ListType.COLUMN_LIST.
+     *
+     * #usage teaching.shareDictionary ("crsCode", course, "crsCode")
+     *
+     * @param attr    the String attribute of this table
+     * @param table2  the table whose dictionary is shared
+     * @param attr2   the String attribute of table2
+     */
+    public void shareDictionary (String attr, Table table2, String attr2)
+    {
+        if (! (tuples instanceof ColumnList) || ! (table2.tuples instanceof ColumnList)) {
+            out.println ("shareDictionary ERROR: tables must be stored in a COLUMN_LIST");
+            return;
+        } // if
+        var j  = col (attr);
+        var j2 = table2.col (attr2);
+        if (j < 0 || j2 < 0 || domain [j] != String.class || table2.domain [j2] != String.class) {
+            out.println ("shareDictionary ERROR: " + attr + " and " + attr2 + " must be String attributes");
+            return;
+        } // if
+        ((ColumnList) tuples).shareDictionary (j, ((ColumnList) table2.tuples).dictionary (j2));
+    } // shareDictionary
+
+    /************************************************************************************
+     * Set the memory budget for the build side of hash joins.  Build sides estimated to
+     * be larger are partitioned to disk by h_join.
+     *
+     * @param bytes  the memory budget in bytes
+     */
+    public static void setJoinMemory (long bytes)
+    {
+        joinMemory = bytes;
+    } // setJoinMemory
+
+    /************************************************************************************
+     * Set the maximum number of UTF-8 bytes in a String value of tables created from now
+     * on in a FileList or MappedList (64 by default).  Inserting a longer String into
+     * such a table throws an IllegalArgumentException.  The size is saved with the table.
+     *
+     * @param bytes  the maximum number of bytes in a String field
+     */
+    public static void setStringBytes (int bytes)
+    {
+        if (bytes < 1 || bytes > Short.MAX_VALUE) {
+            throw new IllegalArgumentException ("String field size must be in 1 .. " + Short.MAX_VALUE);
+        } // if
+        strBytes = bytes;
+    } // setStringBytes
+
     /************************************************************************************
      * Get the name of the table.
      *
@@ -600,8 +1456,8 @@ public class Table
     {
         out.println ("\n Index for " + name);
         out.println ("-------------------");
-        if (mType != MapType.NO_MAP) {
-            for (var e : index.entrySet ()) {
+        if (iType != MapType.NO_MAP) {
+            for (var e : index ().entrySet ()) {
                 out.println (e.getKey () + " -> " + Arrays.toString (e.getValue ()));
             } // for
         } // if
@@ -609,17 +1465,35 @@ public class Table
     } // printIndex
 
     /************************************************************************************
-     * Load the table with the given name into memory.
+     * Load the table with the given name into memory.  Tables are read in the binary
+     * format of TableFile; files saved with Java serialization are still accepted.  A
+     * saved B+Tree index is reopened lazily (its nodes are read as they are reached);
+     * otherwise the index is rebuilt on first use.
      *
      * @param name  the name of the table to load
      */
+    @SuppressWarnings("unchecked")
     public static Table load (String name)
     {
         Table tab = null;
         try {
+            tab = TableFile.read (DIR + name + EXT);
+            if (tab != null) {
+                var idx = DIR + name + IDX;
+                if (tab.iType == MapType.BPTREE_MAP && BpTreeMap.keyCount (idx) == tab.tuples.size ()) {
+                    var bpt = BpTreeMap.open (idx, KeyType.class, Object.class);
+                    if (bpt.isEmpty () || bpt.get (bpt.firstKey ()) instanceof Integer) {  // not pages of tuples
+                        tab.index = RowIndex.of ((Map <KeyType, Integer>) (Map) bpt, tab.tuples);
+                    } else {
+                        bpt.close ();                                   // rebuild the index instead
+                    } // if
+                } // if
+                return tab;
+            } // if
             ObjectInputStream ois = new ObjectInputStream (new FileInputStream (DIR + name + EXT));
             tab = (Table) ois.readObject ();
             ois.close ();
+            if (tab.iType == null) tab.iType = mType;                   // saved before iType existed
         } catch (IOException ex) {
             out.println ("load: IO Exception");
             ex.printStackTrace ();
@@ -631,20 +1505,41 @@ public class Table
     } // load
 
     /************************************************************************************
-     * Save this table in a file.
+     * Save this table in a file, using the binary format of TableFile.  Tables stored in a
+     * FileList or MappedList keep their tuples in their own file, which is only flushed.
+     * A B+Tree index is saved as pages alongside, so that load need not rebuild it.
      */
     public void save ()
     {
         try {
-            var oos = new ObjectOutputStream (new FileOutputStream (DIR + name + EXT));
-            oos.writeObject (this);
-            oos.close ();
+            new File (DIR).mkdirs ();
+            TableFile.write (DIR + name + EXT, name, attribute, domain, key, lType, iType, tuples);
+            if (index () instanceof RowIndex ri && ri.ids () instanceof BpTreeMap bpt) bpt.save (DIR + name + IDX);
+            else                                                                  new File (DIR + name + IDX).delete ();
         } catch (IOException ex) {
             out.println ("save: IO Exception");
             ex.printStackTrace ();
         } // try
     } // save
 
+    /************************************************************************************
+     * Close the file of a table stored in a FileList or MappedList, writing it out first,
+     * and the page file of a B+Tree index reopened by load.  The files are reopened if
+     * the table is used again.
+     */
+    public void close ()
+    {
+        if (tuples instanceof FileList fl)   fl.close ();
+        if (tuples instanceof MappedList ml) ml.close ();
+        if (index instanceof RowIndex ri && ri.ids () instanceof BpTreeMap bpt) {
+            try {
+                bpt.close ();
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+        } // if
+    } // close
+
     //----------------------------------------------------------------------------------
     // Private Methods
     //----------------------------------------------------------------------------------
@@ -711,6 +1606,296 @@ public class Table
         return tup;
     } // extract
 
+    /************************************************************************************
+     * Extract the attributes at the given column positions from tuple t.
+     *
+     * @param t       the tuple to extract from
+     * @param colPos  the column positions (as returned by match)
+     * @return  a smaller tuple extracted from tuple t
+     */
+    private static Comparable [] extract (Comparable [] t, int [] colPos)
+    {
+        var tup = new Comparable [colPos.length];
+        for (var j = 0; j < colPos.length; j++) tup [j] = t [colPos [j]];
+        return tup;
+    } // extract
+
+    /************************************************************************************
+     * Return the tuples of this table paired with their values for the given attributes,
+     * in ascending order of those values.  When the attributes are the primary key and
+     * the index is a sorted map covering every tuple, the index order is used directly;
+     * otherwise the tuples are sorted (stably).
+     *
+     * @param attrs  the attributes to order on
+     * @return  a list of (key, tuple) entries in key order
+     */
+    private List <Map.Entry <KeyType, Comparable []>> sortedOn (String [] attrs)
+    {
+        if (index () instanceof SortedMap && Arrays.equals (attrs, key) && index.size () == tuples.size ()) {
+            return new ArrayList <> (index.entrySet ());
+        } // if
+
+        var cols    = match (attrs);
+        var entries = new ArrayList <Map.Entry <KeyType, Comparable []>> (tuples.size ());
+        for (var t : tuples) entries.add (new AbstractMap.SimpleImmutableEntry <> (new KeyType (extract (t, cols)), t));
+        entries.sort (Map.Entry.comparingByKey ());
+        return entries;
+    } // sortedOn
+
+    /************************************************************************************
+     * Disambiguate the attribute names of table2 for a join result by appending "2" to
+     * any attribute name that also appears in this table.
+     *
+     * @param table2  the rhs table in the join operation
+     * @return  the attribute names of table2 to use in the result
+     */
+    private String [] disambiguate (Table table2)
+    {
+        var newAttrs = new String [table2.attribute.length];
+        for (var j = 0; j < newAttrs.length; j++) {
+            var a = table2.attribute [j];
+            newAttrs [j] = (col (a) >= 0) ? a + "2" : a;
+        } // for
+        return newAttrs;
+    } // disambiguate
+
+    /************************************************************************************
+     * Join the build and probe tuples in memory by hashing the build side on its join
+     * columns and probing it with each probe tuple.  Result tuples always place the
+     * columns of this (left) table first.
+     *
+     * @param build      the tuples to build the hash table on
+     * @param probe      the tuples to probe the hash table with
+     * @param b_cols     the join column positions in the build tuples
+     * @param p_cols     the join column positions in the probe tuples
+     * @param buildLeft  whether the build tuples come from this (left) table
+     * @param rows       the list collecting the joined tuples
+     */
+    private static void hashJoin (Iterable <Comparable []> build, Iterable <Comparable []> probe,
+                                  int [] b_cols, int [] p_cols, boolean buildLeft, List <Comparable []> rows)
+    {
+        var hTable = new HashMap <KeyType, List <Comparable []>> ();
+        for (var b : build) {
+            hTable.computeIfAbsent (new KeyType (extract (b, b_cols)), k -> new ArrayList <> ()).add (b);
+        } // for
+
+        for (var p : probe) {
+            var matches = hTable.get (new KeyType (extract (p, p_cols)));
+            if (matches == null) continue;
+            for (var b : matches) rows.add (buildLeft ? ArrayUtil.concat (b, p) : ArrayUtil.concat (p, b));
+        } // for
+    } // hashJoin
+
+    /************************************************************************************
+     * Return the dictionary shared by column col of this table and column col2 of table2,
+     * or null if the columns are not dictionary-coded with the same dictionary.
+     *
+     * @param col     the column position in this table
+     * @param table2  the other table
+     * @param col2    the column position in table2
+     * @return  the shared dictionary or null
+     */
+    private Dictionary sharedDictionary (int col, Table table2, int col2)
+    {
+        if (! (tuples instanceof ColumnList) || ! (table2.tuples instanceof ColumnList)) return null;
+        var d = ((ColumnList) tuples).dictionary (col);
+        return (d != null && d == ((ColumnList) table2.tuples).dictionary (col2)) ? d : null;
+    } // sharedDictionary
+
+    /************************************************************************************
+     * Join two column lists on a String column coded with a shared dictionary.  Codes are
+     * dense (0 until nCodes), so the build rows are chained per code in int arrays and
+     * each probe row follows the chain for its code, without hashing or comparing strings.
+     *
+     * @param build      the rows to build on
+     * @param bCol       the join column in the build rows
+     * @param probe      the rows to probe with
+     * @param pCol       the join column in the probe rows
+     * @param buildLeft  whether the build rows come from this (left) table
+     * @param nCodes     the size of the shared dictionary
+     * @param rows       the list collecting the joined tuples
+     */
+    private static void codeJoin (ColumnList build, int bCol, ColumnList probe, int pCol,
+                                  boolean buildLeft, int nCodes, List <Comparable []> rows)
+    {
+        var head   = new int [nCodes];                                   // first build row per code
+        var next   = new int [build.size ()];                            // next build row with the same code
+        var bCodes = (int []) build.column (bCol);
+        Arrays.fill (head, -1);
+        for (var i = build.size () - 1; i >= 0; i--) {
+            next [i] = head [bCodes [i]];
+            head [bCodes [i]] = i;
+        } // for
+
+        var pCodes = (int []) probe.column (pCol);
+        for (var i = 0; i < probe.size (); i++) {
+            var b = head [pCodes [i]];
+            if (b < 0) continue;
+            var p = probe.get (i);
+            for ( ; b >= 0; b = next [b]) {
+                var t = build.get (b);
+                rows.add (buildLeft ? ArrayUtil.concat (t, p) : ArrayUtil.concat (p, t));
+            } // for
+        } // for
+    } // codeJoin
+
+    /************************************************************************************
+     * Join the build and probe tuples using a hybrid hash join.  Both inputs are
+     * partitioned on the hash of their join columns.  Partition 0 of the build side is
+     * kept in memory and probed directly, while the other partitions are written to
+     * spill files and joined pairwise afterwards, re-partitioning (with a different hash)
+     * any build partition that still exceeds the memory budget.
+     *
+     * @param build       the tuples to build the hash table on
+     * @param probe       the tuples to probe the hash table with
+     * @param buildBytes  the estimated size of the build tuples in bytes
+     * @param b_cols      the join column positions in the build tuples
+     * @param p_cols      the join column positions in the probe tuples
+     * @param buildLeft   whether the build tuples come from this (left) table
+     * @param level       the recursion level (0 for the first pass)
+     * @param rows        the list collecting the joined tuples
+     */
+    private static void hybridJoin (Iterable <Comparable []> build, Iterable <Comparable []> probe,
+                                    long buildBytes, int [] b_cols, int [] p_cols, boolean buildLeft,
+                                    int level, List <Comparable []> rows)
+            throws IOException
+    {
+        if (buildBytes <= joinMemory || level >= MAX_LEVEL) {
+            hashJoin (build, probe, b_cols, p_cols, buildLeft, rows);
+            return;
+        } // if
+
+        var nParts   = (int) Math.min (MAX_PARTS, buildBytes / joinMemory + 2);
+        var bSpill   = new SpillFile [nParts];
+        var pSpill   = new SpillFile [nParts];
+        var inMemory = new HashMap <KeyType, List <Comparable []>> ();
+
+        try {
+            for (var i = 1; i < nParts; i++) {
+                bSpill [i] = new SpillFile ();
+                pSpill [i] = new SpillFile ();
+            } // for
+
+            for (var b : build) {                                        // partition the build side
+                var bKey = new KeyType (extract (b, b_cols));
+                var i    = partition (bKey, level, nParts);
+                if (i == 0) inMemory.computeIfAbsent (bKey, k -> new ArrayList <> ()).add (b);
+                else        bSpill [i].write (b);
+            } // for
+
+            for (var p : probe) {                                        // partition the probe side
+                var pKey = new KeyType (extract (p, p_cols));
+                var i    = partition (pKey, level, nParts);
+                if (i == 0) {
+                    var matches = inMemory.get (pKey);
+                    if (matches == null) continue;
+                    for (var b : matches) rows.add (buildLeft ? ArrayUtil.concat (b, p) : ArrayUtil.concat (p, b));
+                } else {
+                    if (bSpill [i].size () > 0) pSpill [i].write (p);
+                } // if
+            } // for
+            inMemory = null;
+
+            for (var i = 1; i < nParts; i++) {                          // join the spilled partition pairs
+                bSpill [i].finish ();
+                pSpill [i].finish ();
+                if (bSpill [i].size () > 0 && pSpill [i].size () > 0) {
+                    hybridJoin (bSpill [i], pSpill [i], bSpill [i].bytes (), b_cols, p_cols,
+                                buildLeft, level + 1, rows);
+                } // if
+                bSpill [i].delete ();
+                pSpill [i].delete ();
+            } // for
+        } finally {
+            for (var i = 1; i < nParts; i++) {
+                if (bSpill [i] != null) bSpill [i].delete ();
+                if (pSpill [i] != null) pSpill [i].delete ();
+            } // for
+        } // try
+    } // hybridJoin
+
+    /************************************************************************************
+     * Radix-partition a list of tuples on the hash of their join columns in parallel.
+     * The list is split into one chunk per worker and each chunk is partitioned into its
+     * own lists, so the workers share no state.
+     *
+     * @param pool         the pool to run the partitioning tasks on
+     * @param tups         the tuples to partition
+     * @param cols         the join column positions in the tuples
+     * @param nParts       the number of partitions (a power of 2)
+     * @param parallelism  the number of chunks to split the tuples into
+     * @return  for each chunk, the list of (key, tuple) entries in each partition
+     */
+    private static List <List <List <Map.Entry <KeyType, Comparable []>>>> partitionChunks (
+            ForkJoinPool pool, List <Comparable []> tups, int [] cols, int nParts, int parallelism)
+    {
+        var chunkSize = (tups.size () + parallelism - 1) / Math.max (1, parallelism);
+        var tasks     = new ArrayList <ForkJoinTask <List <List <Map.Entry <KeyType, Comparable []>>>>> ();
+        for (var from = 0; from < tups.size (); from += chunkSize) {
+            var chunk = tups.subList (from, Math.min (tups.size (), from + chunkSize));
+            tasks.add (pool.submit (() -> {
+                var parts = new ArrayList <List <Map.Entry <KeyType, Comparable []>>> (nParts);
+                for (var i = 0; i < nParts; i++) parts.add (new ArrayList <> ());
+                for (var t : chunk) {
+                    var k = new KeyType (extract (t, cols));
+                    parts.get (partition (k, 0, nParts)).add (new AbstractMap.SimpleImmutableEntry <> (k, t));
+                } // for
+                return parts;
+            }));
+        } // for
+
+        var chunks = new ArrayList <List <List <Map.Entry <KeyType, Comparable []>>>> (tasks.size ());
+        for (var task : tasks) chunks.add (task.join ());
+        return chunks;
+    } // partitionChunks
+
+    /************************************************************************************
+     * Determine the partition for a join key.  The hash is remixed for each level so
+     * that re-partitioning a spilled partition splits it further.
+     *
+     * @param k       the join key
+     * @param level   the recursion level
+     * @param nParts  the number of partitions
+     * @return  the partition number in [0, nParts)
+     */
+    private static int partition (KeyType k, int level, int nParts)
+    {
+        var h = k.hashCode () * (0x9E3779B9 + 2 * level);
+        return Math.floorMod (h ^ (h >>> 16), nParts);
+    } // partition
+
+    /************************************************************************************
+     * Estimate the heap size of a list of tuples by sampling its first tuples.
+     *
+     * @param tups  the list of tuples
+     * @return  the estimated size in bytes
+     */
+    private static long estimateBytes (List <Comparable []> tups)
+    {
+        var n = Math.min (tups.size (), 100);
+        if (n == 0) return 0;
+        long sample = 0;
+        for (var i = 0; i < n; i++) sample += tupleBytes (tups.get (i));
+        return sample * tups.size () / n;
+    } // estimateBytes
+
+    /************************************************************************************
+     * Estimate the heap size of a tuple (including its share of a hash table entry).
+     *
+     * @param t  the tuple
+     * @return  the estimated size in bytes
+     */
+    private static long tupleBytes (Comparable [] t)
+    {
+        long bytes = 64 + 4L * t.length;                                 // array, hash entry and key
+        for (var v : t) {
+            if (v instanceof String)                       bytes += 40 + ((String) v).length ();
+            else if (v instanceof Long || v instanceof Double) bytes += 24;
+            else                                           bytes += 16;
+        } // for
+        return bytes;
+    } // tupleBytes
+
     /************************************************************************************
      * Check the size of the tuple (number of elements in list) as well as the type of
      * each value to ensure it is from the right domain.
@@ -753,7 +1938,7 @@ public class Table
      * @param className  the array of class name (e.g., {"Integer", "String"})
      * @return  an array of Java classes
      */
-    private static Class [] findClass (String [] className)
+    static Class [] findClass (String [] className)
     {
         var classArray = new Class [className.length];
 
@@ -811,7 +1996,83 @@ public class Table
     // returns number of tuples (for validation)
     public int size() {
         // return the one with higher value
-        return Math.max(index.size(), tuples.size());
+        return (index == null) ? tuples.size() : Math.max(index.size(), tuples.size());
     }
 
+    /************************************************************************************
+     * A temporary file under the storage directory holding the tuples of one partition
+     * of a hybrid hash join.  Tuples are written sequentially and may then be read back
+     * (any number of times) by iterating over the file.
+     */
+    private static class SpillFile
+            implements Iterable <Comparable []>
+    {
+        private final File file;
+        private ObjectOutputStream oos;
+        private int  size  = 0;
+        private long bytes = 0;
+
+        SpillFile () throws IOException
+        {
+            new File (DIR).mkdirs ();
+            file = File.createTempFile ("spill", ".tmp", new File (DIR));
+            oos  = new ObjectOutputStream (new BufferedOutputStream (new FileOutputStream (file)));
+        } // constructor
+
+        void write (Comparable [] t) throws IOException
+        {
+            oos.writeObject (t);
+            if (++size % 1000 == 0) oos.reset ();                         // release back-references
+            bytes += tupleBytes (t);
+        } // write
+
+        void finish () throws IOException
+        {
+            if (oos != null) { oos.close (); oos = null; }
+        } // finish
+
+        void delete ()
+        {
+            try { finish (); } catch (IOException ex) { /* being discarded anyway */ }
+            file.delete ();
+        } // delete
+
+        int size () { return size; }
+
+        long bytes () { return bytes; }
+
+        public Iterator <Comparable []> iterator ()
+        {
+            try {
+                var ois = new ObjectInputStream (new BufferedInputStream (new FileInputStream (file)));
+                return new Iterator <> () {
+                    private int read = 0;
+
+                    public boolean hasNext ()
+                    {
+                        if (read < size) return true;
+                        try { ois.close (); } catch (IOException ex) { throw new UncheckedIOException (ex); }
+                        return false;
+                    } // hasNext
+
+                    public Comparable [] next ()
+                    {
+                        if (read >= size) throw new NoSuchElementException ();
+                        try {
+                            read++;
+                            return (Comparable []) ois.readObject ();
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException (ex);
+                        } catch (ClassNotFoundException ex) {
+                            throw new IllegalStateException (ex);
+                        } // try
+                    } // next
+                };
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+        } // iterator
+
+    } // SpillFile class
+
 }
@@ -0,0 +1,352 @@
+package AppSlash.Code;
+/****************************************************************************************
+ * @file  TableFile.java
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The TableFile class reads and writes tables in a compact, versioned binary format
+ * through a buffered FileChannel:
+ *
+ *     magic, version, name, attributes, domains, key, list type, map type,
+ *     then either the path of the list's own data file and its String field size
+ *     (FILE_LIST, MAPPED_LIST) or the row count followed by blocks of up to BLOCK rows
+ *     stored column by column.
+ *
+ * Numbers are written in their primitive binary form and strings (including Strings in
+ * the data) as a length followed by their UTF-8 bytes.  The index is not part of this
+ * file: Table.save writes a B+Tree index to its own page file, which Table.load reopens,
+ * and other indexes are rebuilt from the tuples on first use.
+ */
+final class TableFile
+{
+    /** The magic number identifying a table file.
+     */
+    private static final int MAGIC = 0x5442_4c46;
+
+    /** The version of the format written (version 1 files have no map type and are read
+     *  with the default; version 2 files have no String field size and use the default).
+     */
+    private static final short VERSION = 3;
+
+    /** The number of rows per column block.
+     */
+    private static final int BLOCK = 4096;
+
+    /** The size (in bytes) of the I/O buffer.
+     */
+    private static final int BUF_SIZE = 1 << 20;
+
+    /** The channel to the table file.
+     */
+    private final FileChannel ch;
+
+    /** The I/O buffer.
+     */
+    private final ByteBuffer buf = ByteBuffer.allocateDirect (BUF_SIZE);
+
+    /************************************************************************************
+     * Construct a table file on the given channel.
+     *
+     * @param _ch  the file channel
+     */
+    private TableFile (FileChannel _ch)
+    {
+        ch = _ch;
+    } // constructor
+
+    /************************************************************************************
+     * Write a table to the file with the given path.
+     *
+     * @param path       the path of the table file
+     * @param name       the name of the table
+     * @param attribute  the attribute names
+     * @param domain     the attribute domains
+     * @param key        the primary key
+     * @param lType      the type of list storing the tuples
+     * @param iType      the type of map for the primary index
+     * @param tuples     the tuples
+     */
+    static void write (String path, String name, String [] attribute, Class [] domain, String [] key,
+                       Table.ListType lType, Table.MapType iType, List <Comparable []> tuples)
+            throws IOException
+    {
+        try (var ch = FileChannel.open (Paths.get (path), StandardOpenOption.CREATE,
+                                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            var tf = new TableFile (ch);
+            tf.need (6);
+            tf.buf.putInt (MAGIC).putShort (VERSION);
+            tf.putString (name);
+            tf.putStrings (attribute);
+            var dom = new String [domain.length];
+            for (var j = 0; j < dom.length; j++) dom [j] = domain [j].getSimpleName ();
+            tf.putStrings (dom);
+            tf.putStrings (key);
+            tf.putString (lType.name ());
+            tf.putString (iType.name ());
+
+            if (tuples instanceof FileList fl) {
+                fl.flush ();
+                tf.putString (fl.path ());
+                tf.need (4);
+                tf.buf.putInt (fl.strBytes ());
+            } else if (tuples instanceof MappedList ml) {
+                ml.force ();
+                tf.putString (ml.path ());
+                tf.need (4);
+                tf.buf.putInt (ml.strBytes ());
+            } else {
+                tf.need (4);
+                tf.buf.putInt (tuples.size ());
+                var block = new ArrayList <Comparable []> (BLOCK);
+                for (var t : tuples) {
+                    block.add (t);
+                    if (block.size () == BLOCK) { tf.putBlock (block, domain); block.clear (); }
+                } // for
+                if (! block.isEmpty ()) tf.putBlock (block, domain);
+            } // if
+            tf.drain ();
+        } // try
+    } // write
+
+    /************************************************************************************
+     * Read a table from the file with the given path.
+     *
+     * @param path  the path of the table file
+     * @return  the table, or null if the file is not in this format (e.g., a table saved
+     *          with Java serialization by older versions)
+     */
+    static Table read (String path)
+            throws IOException
+    {
+        try (var ch = FileChannel.open (Paths.get (path), StandardOpenOption.READ)) {
+            var tf = new TableFile (ch);
+            tf.buf.flip ();
+            if (! tf.fill (6) || tf.buf.getInt () != MAGIC) return null;
+            var version = tf.buf.getShort ();
+            if (version < 1 || version > VERSION) throw new IOException ("unsupported table file version " + version);
+
+            var name      = tf.getString ();
+            var attribute = tf.getStrings ();
+            var domain    = Table.findClass (tf.getStrings ());
+            var key       = tf.getStrings ();
+            var lType     = Table.ListType.valueOf (tf.getString ());
+            var iType     = (version > 1) ? Table.MapType.valueOf (tf.getString ()) : null;
+
+            List <Comparable []> tuples;
+            switch (lType) {
+            case FILE_LIST   -> tuples = FileList.open (tf.getString (), domain, tf.getStrBytes (version));
+            case MAPPED_LIST -> tuples = MappedList.open (tf.getString (), domain, tf.getStrBytes (version));
+            default -> {
+                tuples = (lType == Table.ListType.COLUMN_LIST) ? new ColumnList (domain) : new ArrayList <> ();
+                tf.fill (4);
+                var n = tf.buf.getInt ();
+                for (var i = 0; i < n; i += BLOCK) tf.getBlock (Math.min (BLOCK, n - i), domain, tuples);
+            } // default
+            } // switch
+            return new Table (name, attribute, domain, key, lType, iType, tuples);
+        } // try
+    } // read
+
+    //-----------------------------------------------------------------------------------
+    // Writing
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Write a block of rows column by column.
+     *
+     * @param block   the rows
+     * @param domain  the attribute domains
+     */
+    private void putBlock (List <Comparable []> block, Class [] domain)
+            throws IOException
+    {
+        need (4);
+        buf.putInt (block.size ());
+        for (var j = 0; j < domain.length; j++) {
+            var dom = domain [j];
+            if (dom == String.class) {
+                for (var t : block) putString ((String) t [j]);
+                continue;
+            } // if
+            for (var t : block) {
+                need (8);
+                var v = t [j];
+                if      (dom == Integer.class)   buf.putInt (((Number) v).intValue ());
+                else if (dom == Long.class)      buf.putLong (((Number) v).longValue ());
+                else if (dom == Double.class)    buf.putDouble (((Number) v).doubleValue ());
+                else if (dom == Float.class)     buf.putFloat (((Number) v).floatValue ());
+                else if (dom == Short.class)     buf.putShort (((Number) v).shortValue ());
+                else if (dom == Byte.class)      buf.put (((Number) v).byteValue ());
+                else if (dom == Character.class) buf.putChar ((Character) v);
+                else throw new IOException ("cannot write domain " + dom.getSimpleName ());
+            } // for
+        } // for
+    } // putBlock
+
+    /************************************************************************************
+     * Write an array of strings preceded by its length.
+     *
+     * @param s  the strings
+     */
+    private void putStrings (String [] s)
+            throws IOException
+    {
+        need (4);
+        buf.putInt (s.length);
+        for (var x : s) putString (x);
+    } // putStrings
+
+    /************************************************************************************
+     * Write a string as its length followed by its UTF-8 bytes.
+     *
+     * @param s  the string
+     */
+    private void putString (String s)
+            throws IOException
+    {
+        var b = s.getBytes (StandardCharsets.UTF_8);
+        need (4);
+        buf.putInt (b.length);
+        if (b.length <= BUF_SIZE) {
+            need (b.length);
+            buf.put (b);
+        } else {
+            drain ();
+            var w = ByteBuffer.wrap (b);
+            while (w.hasRemaining ()) ch.write (w);
+        } // if
+    } // putString
+
+    /************************************************************************************
+     * Make room for n bytes in the buffer, writing it out if needed.
+     *
+     * @param n  the number of bytes needed
+     */
+    private void need (int n)
+            throws IOException
+    {
+        if (buf.remaining () < n) drain ();
+    } // need
+
+    /************************************************************************************
+     * Write out the contents of the buffer.
+     */
+    private void drain ()
+            throws IOException
+    {
+        buf.flip ();
+        while (buf.hasRemaining ()) ch.write (buf);
+        buf.clear ();
+    } // drain
+
+    //-----------------------------------------------------------------------------------
+    // Reading
+    //-----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Read a block of n rows stored column by column, appending them to tuples.
+     *
+     * @param n       the number of rows in the block
+     * @param domain  the attribute domains
+     * @param tuples  the list to append the rows to
+     */
+    private void getBlock (int n, Class [] domain, List <Comparable []> tuples)
+            throws IOException
+    {
+        fill (4);
+        if (buf.getInt () != n) throw new IOException ("corrupt table file: bad block size");
+        var rows = new Comparable [n][domain.length];
+        for (var j = 0; j < domain.length; j++) {
+            var dom = domain [j];
+            for (var i = 0; i < n; i++) {
+                if (dom == String.class) { rows [i][j] = getString (); continue; }
+                fill (8);
+                if      (dom == Integer.class)   rows [i][j] = buf.getInt ();
+                else if (dom == Long.class)      rows [i][j] = buf.getLong ();
+                else if (dom == Double.class)    rows [i][j] = buf.getDouble ();
+                else if (dom == Float.class)     rows [i][j] = buf.getFloat ();
+                else if (dom == Short.class)     rows [i][j] = buf.getShort ();
+                else if (dom == Byte.class)      rows [i][j] = buf.get ();
+                else if (dom == Character.class) rows [i][j] = buf.getChar ();
+                else throw new IOException ("cannot read domain " + dom.getSimpleName ());
+            } // for
+        } // for
+        tuples.addAll (Arrays.asList (rows));
+    } // getBlock
+
+    /************************************************************************************
+     * Read an array of strings preceded by its length.
+     *
+     * @return  the strings
+     */
+    private String [] getStrings ()
+            throws IOException
+    {
+        fill (4);
+        var s = new String [buf.getInt ()];
+        for (var i = 0; i < s.length; i++) s [i] = getString ();
+        return s;
+    } // getStrings
+
+    /************************************************************************************
+     * Read the String field size of a list's data file (not written before version 3).
+     *
+     * @param version  the version of the file being read
+     * @return  the maximum number of bytes in a String field
+     */
+    private int getStrBytes (short version)
+            throws IOException
+    {
+        if (version < 3) return FileList.STR_BYTES;
+        fill (4);
+        return buf.getInt ();
+    } // getStrBytes
+
+    /************************************************************************************
+     * Read a string written as its length followed by its UTF-8 bytes.
+     *
+     * @return  the string
+     */
+    private String getString ()
+            throws IOException
+    {
+        fill (4);
+        var b = new byte [buf.getInt ()];
+        if (b.length <= BUF_SIZE) {
+            if (! fill (b.length)) throw new EOFException ();
+            buf.get (b);
+        } else {
+            var got = Math.min (buf.remaining (), b.length);
+            buf.get (b, 0, got);
+            var w = ByteBuffer.wrap (b, got, b.length - got);
+            while (w.hasRemaining ()) if (ch.read (w) < 0) throw new EOFException ();
+        } // if
+        return new String (b, StandardCharsets.UTF_8);
+    } // getString
+
+    /************************************************************************************
+     * Make sure at least n bytes are available in the buffer, reading more if needed.
+     * Values near the end of the file may be shorter than the requested n (e.g., a final
+     * byte), so only running out before any bytes are available counts as end of file.
+     *
+     * @param n  the number of bytes wanted
+     * @return  whether n bytes are available
+     */
+    private boolean fill (int n)
+            throws IOException
+    {
+        if (buf.remaining () >= n) return true;
+        buf.compact ();
+        while (buf.position () < n && ch.read (buf) >= 0) ;
+        buf.flip ();
+        return buf.remaining () >= n;
+    } // fill
+
+} // TableFile class
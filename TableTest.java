@@ -1,8 +1,16 @@
 package AppSlash.Tests;
 
+import AppSlash.Code.BpTreeMap;
+import AppSlash.Code.FileList;
+import AppSlash.Code.KeyType;
 import AppSlash.Code.Table;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static java.lang.System.out;
 import static junit.framework.TestCase.assertTrue;
 
@@ -90,6 +98,53 @@ public class TableTest {
         studio.print();
     } //createTable
 
+    /**
+     * Return the rows of a table (scanned through its pipeline) as sorted strings, so that
+     * results produced in different orders can be compared.
+     */
+    private static List<String> rowsOf(Table t) {
+        var rows = new ArrayList<String>();
+        var op = t.scan();
+        op.open();
+        for (var r = op.next(); r != null; r = op.next()) rows.add(Arrays.toString(r));
+        op.close();
+        Collections.sort(rows);
+        return rows;
+    } //rowsOf
+
+    /**
+     * Return whether two tables hold the same rows in any order: the same row count, and
+     * each table's rows all found in the other.
+     */
+    private static boolean sameRows(Table t1, Table t2) {
+        var r1 = rowsOf(t1);
+        var r2 = rowsOf(t2);
+        return t1.size() == t2.size() && r1.size() == t1.size() && r1.equals(r2);
+    } //sameRows
+
+    /**
+     * Return a copy of the movie table with its tuples stored in the given type of list.
+     */
+    private static Table movieIn(String name, Table.ListType lType) {
+        if (movie == null) createTable();
+        var t = new Table(name, "title year length genre studioName producerNo",
+                "String Integer Integer String String Integer", "title year", lType);
+        var op = movie.scan();
+        op.open();
+        for (var r = op.next(); r != null; r = op.next()) t.insert(r);
+        op.close();
+        return t;
+    } //movieIn
+
+    /**
+     * Delete the files the named tables left in the storage directory.
+     */
+    private static void dropFiles(String... names) {
+        for (var name : names) {
+            for (var ext : new String[]{".dbf", ".idx", ".lst", ".map"}) new java.io.File("store/" + name + ext).delete();
+        }
+    } //dropFiles
+
 
     /**
      * Project Method Testing
@@ -153,6 +208,7 @@ public class TableTest {
         var t_select = movie.select(t -> t[movie.col("title")].equals("Star_Wars") &&
                 t[movie.col("year")].equals(1977));
         assertTrue(projectOutput.equals(t_select));
+        assertTrue(sameRows(projectOutput, movie.select(new KeyType("Star_Wars"), new KeyType("Star_Wars"))));
         t_select.print();
         out.println("End of Test Case I:  movie.select: equals, &&");
         out.println();
@@ -184,6 +240,15 @@ public class TableTest {
 
         //assertTrue(outputMovie2.equals(t_select2));
         t_select2.print();
+        assertTrue(sameRows(t_select2, movie.select("year", "<", 1980)));
+        assertTrue(sameRows(t_select2, movie.select("year", "<", 1979.5)));
+        assertTrue(sameRows(movie.select(t -> (Integer) t[movie.col("year")] <= 1978), movie.select("year", "<", 1978.5)));
+        try {
+            movie.select("year", "<", "1980");
+            assertTrue(false);
+        } catch (IllegalArgumentException ex) {
+            out.println("non-numeric constant rejected: " + ex.getMessage());
+        }
         out.println("End of Test Case II:  movie.select: <");
 
 
@@ -340,6 +405,22 @@ public class TableTest {
         out.println("End of Test Case V: i-join: movie JOIN studio ON studioName = name");
         out.println();
 
+        out.println();
+        out.println("Test Case VI: h-join: movie JOIN studio ON studioName = name");
+        var h_join = movie.h_join("studioName", "name", studio);
+        assertTrue(sameRows(joinOutput, h_join));
+        h_join.print();
+        out.println("End of Test Case VI: h-join: movie JOIN studio ON studioName = name");
+        out.println();
+
+        out.println();
+        out.println("Test Case VII: sm-join: movie JOIN studio ON studioName = name");
+        var sm_join = movie.sm_join("studioName", "name", studio);
+        assertTrue(sameRows(joinOutput, sm_join));
+        sm_join.print();
+        out.println("End of Test Case VII: sm-join: movie JOIN studio ON studioName = name");
+        out.println();
+
         //Displaying the output that is predicted for the movie equi-join cinema ON title = title query
 
 
@@ -362,6 +443,7 @@ public class TableTest {
         var t_join1 = movie.join("title", "title", cinema);
         assertTrue(joinOutput1.equals(t_join1));
         t_join1.print();
+        assertTrue(sameRows(joinOutput1, movie.h_join("title", "title", cinema)));
         out.println("End of Test Case II: equi-join: movie JOIN cinema ON title = title");
         out.println();
 
@@ -414,4 +496,273 @@ public class TableTest {
 
     }//natural-join
 
+    /**
+     * Parallel hash join over disk-backed tables (read by several threads at once)
+     */
+    @Test
+    public void ph_join() {
+        FileList.setPoolSize(4);                             // small pools force page eviction
+        var emp  = new Table("phEmp", "id name deptNo", "Integer String Integer", "id", Table.ListType.FILE_LIST);
+        var dept = new Table("phDept", "deptNo dname", "Integer String", "deptNo", Table.ListType.FILE_LIST);
+        FileList.setPoolSize(64);
+        var ps = System.out;
+        System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));   // quiet the inserts
+        try {
+            for (var i = 0; i < 20000; i++) emp.insert(new Comparable[]{i, "e" + i, i % 500});
+            for (var i = 0; i < 400; i++) dept.insert(new Comparable[]{i, "d" + i});
+        } finally {
+            System.setOut(ps);
+        }
+        try {
+            var expected = rowsOf(emp.h_join("deptNo", "deptNo", dept));
+            assertTrue(expected.size() == 16000);
+            for (var p : new int[]{1, 3, 8}) assertTrue(expected.equals(rowsOf(emp.ph_join("deptNo", "deptNo", dept, p))));
+            var pool = new java.util.concurrent.ForkJoinPool(2);                 // caller-supplied pool
+            try {
+                assertTrue(expected.equals(rowsOf(emp.ph_join("deptNo", "deptNo", dept, 4, pool))));
+            } finally {
+                pool.shutdown();
+            }
+            try {
+                emp.ph_join("deptNo", "deptNo", dept, 0);
+                assertTrue(false);
+            } catch (IllegalArgumentException ex) {
+                out.println("bad parallelism rejected: " + ex.getMessage());
+            }
+        } finally {
+            emp.close();
+            dept.close();
+            dropFiles("phEmp", "phDept");
+        }
+    } //ph_join
+
+    /**
+     * Hash join with a tiny memory budget, so that both inputs are spilled to disk
+     */
+    @Test
+    public void h_join_spill() {
+        var emp  = new Table("hjEmp", "id name deptNo", "Integer String Integer", "id");
+        var dept = new Table("hjDept", "deptNo dname", "Integer String", "deptNo");
+        var ps = System.out;
+        System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));   // quiet the inserts
+        try {
+            for (var i = 0; i < 6000; i++) emp.insert(new Comparable[]{i, "e" + i, i % 1500});
+            for (var i = 0; i < 1200; i++) dept.insert(new Comparable[]{i, "d" + i});
+        } finally {
+            System.setOut(ps);
+        }
+        var expected = rowsOf(emp.h_join("deptNo", "deptNo", dept));
+        assertTrue(expected.size() == 4800);
+        Table.setJoinMemory(4096);                           // far below the build side
+        try {
+            assertTrue(expected.equals(rowsOf(emp.h_join("deptNo", "deptNo", dept))));
+        } finally {
+            Table.setJoinMemory(64L << 20);
+        }
+    } //h_join_spill
+
+    /**
+     * Pull-based operator pipelines produce the same rows as the Table operators
+     */
+    @Test
+    public void pipeline() {
+        if (movie == null) createTable();
+        var year = movie.col("year");
+        java.util.function.Predicate<Comparable[]> p = t -> (Integer) t[year] < 1982;
+        var piped = movie.scan().select(p).project("studioName year").materialize("piped");
+        assertTrue(rowsOf(piped).equals(rowsOf(movie.select(p).project("studioName year"))));
+        assertTrue(rowsOf(piped).size() == 3);
+
+        var pjoin = movie.scan().join("studioName", "name", studio.scan()).materialize("pjoin");
+        assertTrue(rowsOf(pjoin).equals(rowsOf(movie.h_join("studioName", "name", studio))));
+        assertTrue(pjoin.size() == 4);
+
+        assertTrue(movie.scan().join("studioName", "noSuchAttr", studio.scan()).materialize("bad").size() == 0);
+        assertTrue(movie.scan().join("studioName year", "name", studio.scan()).materialize("bad").size() == 0);
+    } //pipeline
+
+    /**
+     * Rebuilding the primary index with each map type preserves select results, and
+     * materialized pipelines keep the table's map type
+     */
+    @Test
+    public void rebuildIndex() {
+        if (movie == null) createTable();
+        var t = movie.project("title year length genre studioName producerNo");
+        var rocky = new KeyType(new Comparable[]{"Rocky", 1985});
+        var expected = rowsOf(t.select(rocky));
+        assertTrue(expected.size() == 1);
+        for (var kind : Table.MapType.values()) {
+            t.rebuildIndex(kind);
+            assertTrue(t.mapType() == kind);
+            assertTrue(rowsOf(t.select(rocky)).equals(expected));
+            assertTrue(t.select(new KeyType(new Comparable[]{"Rocky", 1986})).size() == 0);
+            assertTrue(t.scan().materialize("m").mapType() == kind);
+            assertTrue(t.batchScan().filter("year", "<", 1980).materialize("b").mapType() == kind);
+            assertTrue(t.select(r -> true).mapType() == kind);
+            assertTrue(t.join("studioName", "name", studio).mapType() == kind);
+            assertTrue(t.h_join("studioName", "name", studio).mapType() == kind);
+            assertTrue(t.ph_join("studioName", "name", studio, 2).mapType() == kind);
+            assertTrue(t.i_join("studioName", "name", studio).mapType() == kind);
+            assertTrue(t.join(studio).mapType() == kind);
+        }
+    } //rebuildIndex
+
+    /**
+     * Tuples stored column by column read back the same as the row-stored movie table
+     */
+    @Test
+    public void columnList() {
+        var cols = movieIn("movieCols", Table.ListType.COLUMN_LIST);
+        assertTrue(rowsOf(cols).equals(rowsOf(movie)));
+        var rocky = new KeyType(new Comparable[]{"Rocky", 1985});
+        assertTrue(rowsOf(cols.select(rocky)).equals(rowsOf(movie.select(rocky))));
+        assertTrue(rowsOf(cols.select("year", "<", 1980)).equals(rowsOf(movie.select("year", "<", 1980))));
+        assertTrue(rowsOf(cols.project("studioName")).equals(rowsOf(movie.project("studioName"))));
+    } //columnList
+
+    /**
+     * A table stored in a memory-mapped list reloads with the same tuples and index
+     */
+    @Test
+    public void mappedList() {
+        var mapped = movieIn("movieMapped", Table.ListType.MAPPED_LIST);
+        mapped.save();
+        var loaded = Table.load("movieMapped");
+        assertTrue(loaded != null);
+        assertTrue(rowsOf(loaded).equals(rowsOf(movie)));
+        var rocky = new KeyType(new Comparable[]{"Rocky", 1985});
+        assertTrue(rowsOf(loaded.select(rocky)).equals(rowsOf(movie.select(rocky))));
+        assertTrue(loaded.insert(new Comparable[]{"Alien", 1979, 117, "sciFi", "Fox", 12345}));
+        assertTrue(loaded.size() == movie.size() + 1);
+        assertTrue(loaded.select(new KeyType(new Comparable[]{"Alien", 1979})).size() == 1);
+        mapped.close();
+        loaded.close();
+        assertTrue(loaded.select(rocky).size() == 1);                  // files reopened on use
+        loaded.close();
+        assertTrue(new java.io.File("store/movieMapped.map").length() < 1 << 16);   // grows with the data
+        dropFiles("movieMapped");
+    } //mappedList
+
+    /**
+     * Tables saved in the binary table file format load back unchanged
+     */
+    @Test
+    public void saveLoad() {
+        var saved = movieIn("movieSaved", Table.ListType.ARRAY_LIST);
+        saved.rebuildIndex(Table.MapType.LINHASH_MAP);
+        saved.save();
+        var loaded = Table.load("movieSaved");
+        assertTrue(loaded != null);
+        assertTrue(loaded.mapType() == Table.MapType.LINHASH_MAP);
+        assertTrue(rowsOf(loaded).equals(rowsOf(movie)));
+        var rocky = new KeyType(new Comparable[]{"Rocky", 1985});
+        assertTrue(rowsOf(loaded.select(rocky)).equals(rowsOf(movie.select(rocky))));
+
+        for (var t : new Table[]{movieStar, movieExec}) {                 // Character and Float domains
+            t.save();
+            assertTrue(rowsOf(Table.load(t.getName())).equals(rowsOf(t)));
+        }
+        dropFiles("movieSaved", movieStar.getName(), movieExec.getName());
+    } //saveLoad
+
+    /**
+     * Selects answered from a secondary index return the same rows as a scan
+     */
+    @Test
+    public void secondaryIndex() {
+        var film = new Comparable[]{"Alien", 1979, 117, "sciFi", "Fox", 12345};
+        var plain = movieIn("movieScan", Table.ListType.ARRAY_LIST);
+        plain.insert(film);
+        for (var kind : new Table.MapType[]{Table.MapType.TREE_MAP, Table.MapType.LINHASH_MAP,
+                                            Table.MapType.BPTREE_MAP, Table.MapType.BLINK_TREE_MAP}) {
+            var indexed = movieIn("movieSec", Table.ListType.ARRAY_LIST);
+            indexed.createIndex("year", kind);
+            indexed.createIndex("studioName", kind);
+            indexed.insert(film);                                     // kept up to date by insert
+            for (var op : new String[]{"==", "!=", "<", "<=", ">", ">="}) {
+                for (var year : new int[]{1976, 1978, 1979, 1985, 1990}) {
+                    assertTrue(rowsOf(indexed.select("year", op, year)).equals(rowsOf(plain.select("year", op, year))));
+                }
+            }
+            for (var studio : new String[]{"Fox", "Universal", "MGM"}) {
+                assertTrue(rowsOf(indexed.select("studioName", "==", studio)).equals(rowsOf(plain.select("studioName", "==", studio))));
+            }
+            assertTrue(rowsOf(indexed.select("year", "=", 1979)).equals(rowsOf(plain.select("year", "==", 1979))));
+            for (var op : new String[]{"=<", "<>", "=>"}) {
+                try {
+                    indexed.select("year", op, 1979);
+                    assertTrue(false);
+                } catch (IllegalArgumentException ex) {
+                    out.println("unknown comparison rejected: " + ex.getMessage());
+                }
+            }
+        }
+    } //secondaryIndex
+
+    /**
+     * Putting an existing key in a B+Tree map replaces its value without counting it again
+     */
+    @Test
+    public void bpTreePut() {
+        var map = new BpTreeMap<Integer, String>(Integer.class, String.class);
+        for (var i = 0; i < 1000; i++) assertTrue(map.put(i, "a" + i) == null);
+        for (var i = 0; i < 1000; i += 3) assertTrue(("a" + i).equals(map.put(i, "b" + i)));
+        assertTrue(map.size() == 1000);
+        assertTrue("b999".equals(map.get(999)) && "a998".equals(map.get(998)));
+        assertTrue("b999".equals(map.remove(999)));
+        assertTrue(map.size() == 999);
+    } //bpTreePut
+
+    /**
+     * Tables without an index (NoMap) give the same results as indexed tables
+     */
+    @Test
+    public void noMap() {
+        for (var kind : new String[]{"NoMap", "BpTreeMap"}) {
+            var emp  = new Table("nm" + kind, "id name dept", "Integer String String", "id", kind);
+            var emp2 = new Table("nm2" + kind, "id name dept", "Integer String String", "id", kind);
+            for (var i = 0; i < 3; i++) emp.insert(new Comparable[]{i, "e" + i, "D"});
+            for (var i = 2; i < 4; i++) emp2.insert(new Comparable[]{i, "e" + i, "D"});
+            assertTrue(emp.project("dept").size() == 1);
+            assertTrue(emp.union(emp2).size() == 4);
+            assertTrue(rowsOf(emp.minus(emp2)).equals(List.of("[0, e0, D]", "[1, e1, D]")));
+            assertTrue(rowsOf(emp.i_join("id", "id", emp2)).equals(List.of("[2, e2, D, 2, e2, D]")));
+            assertTrue(emp.select(new KeyType(new Comparable[]{1})).size() == 1);
+        }
+    } //noMap
+
+    /**
+     * Disk-backed tables store Strings up to the field size chosen when they are created
+     */
+    @Test
+    public void stringBytes() {
+        var longName = "x".repeat(150);
+        for (var lType : new Table.ListType[]{Table.ListType.FILE_LIST, Table.ListType.MAPPED_LIST}) {
+            var narrow = new Table("sbNarrow", "id name", "Integer String", "id", lType);
+            try {
+                narrow.insert(new Comparable[]{1, longName});
+                assertTrue(false);
+            } catch (IllegalArgumentException ex) {
+                out.println("long string rejected: " + ex.getMessage());
+            }
+            narrow.close();
+
+            Table.setStringBytes(200);
+            Table wide;
+            try {
+                wide = new Table("sbWide", "id name", "Integer String", "id", lType);
+            } finally {
+                Table.setStringBytes(64);
+            }
+            assertTrue(wide.insert(new Comparable[]{1, longName}));
+            wide.save();
+            wide.close();
+            var loaded = Table.load("sbWide");
+            assertTrue(rowsOf(loaded).equals(List.of("[1, " + longName + "]")));
+            loaded.close();
+            dropFiles("sbNarrow", "sbWide");
+        }
+    } //stringBytes
+
 }//class
\ No newline at end of file